@@ -0,0 +1,81 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * An EventChannel that uses the binary EventCodec.
+ * 
+ */
+public class BinaryEventChannel extends EventChannel {
+
+	private InputStream in;
+	private OutputStream out;
+
+	public BinaryEventChannel(Socket socket) throws IOException {
+		// a Reactor takes over the socket after the join handshake, so the
+		// handshake must not read ahead of the frames it consumes
+		if (Settings.NIO_REACTOR)
+			in = socket.getInputStream();
+		else
+			in = new BufferedInputStream(socket.getInputStream());
+		out = new BufferedOutputStream(socket.getOutputStream(),
+				Settings.OUTPUT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a channel over a pair of streams (used as is).
+	 * 
+	 * @param in
+	 * @param out
+	 */
+	protected BinaryEventChannel(InputStream in, OutputStream out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	@Override
+	public Event read() throws IOException {
+		byte[] payload = EventCodec.readFrame(in);
+		if (compression != null)
+			return compression.decode(payload, 0, payload.length);
+
+		return EventCodec.decode(payload);
+	}
+
+	@Override
+	public void write(Event event) throws IOException {
+		if (compression != null) {
+			write(new EncodedEvent(event));
+			return;
+		}
+
+		EventCodec.writeFrame(out, EventCodec.encode(event));
+	}
+
+	@Override
+	public void write(EncodedEvent event) throws IOException {
+		// the frame is only encoded (and compressed) once for all channels
+		if (compression != null)
+			compression.write(event, out);
+		else
+			event.writeTo(out);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+		out.close();
+	}
+}
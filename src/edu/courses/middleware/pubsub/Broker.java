@@ -1,17 +1,39 @@
 package edu.courses.middleware.pubsub;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.UnknownHostException;
-
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
+import edu.courses.middleware.pubsub.events.AvailableItemEvent;
+import edu.courses.middleware.pubsub.events.BidEvent;
+import edu.courses.middleware.pubsub.events.CapacityEvent;
+import edu.courses.middleware.pubsub.events.InterestEvent;
+import edu.courses.middleware.pubsub.events.JoinRedirectEvent;
 import edu.courses.middleware.pubsub.events.JoinRequestAckEvent;
 import edu.courses.middleware.pubsub.events.JoinRequestEvent;
 import edu.courses.middleware.pubsub.events.JoinRequestEvent.ClientType;
+import edu.courses.middleware.pubsub.events.LoadEvent;
 import edu.courses.middleware.pubsub.events.Event;
 import edu.courses.middleware.pubsub.events.SubscriptionEvent;
+import edu.courses.middleware.pubsub.events.UnadvertisementEvent;
 import edu.courses.middleware.pubsub.events.UnsubscriptionEvent;
 
 /**
@@ -22,45 +44,211 @@ import edu.courses.middleware.pubsub.events.UnsubscriptionEvent;
  * first instantiated Broker acts as the root of the tree and subsequently
  * created Brokers join the tree as internal nodes.
  * 
+ * Each Broker accepts a limited number of child Brokers and, separately, of
+ * clients (Buyers and Sellers; see Configuration). Joining clients are placed
+ * in the nearest available spot for their kind, so that the tree stays
+ * shallow: every Broker reports how far below it the nearest spots are to its
+ * parent (see CapacityEvent). Among branches with room, joining clients are
+ * sent towards lightly loaded ones: every Broker also periodically reports
+ * how busy its subtree is (see LoadEvent). The tree grows as it fills up: if
+ * Settings.BROKER_TREE_GROWTH is set, a client joining a subtree with no room
+ * left is sent on towards the best spot for a child Broker, and the Broker
+ * holding that spot (one with no such spots below it, e.g., a leaf) starts a
+ * new Broker in its own JVM for it, so that growth is spread over the tree
+ * rather than piled onto the Broker the client happened to reach (usually
+ * the root).
+ * 
+ * Events are routed along subscriptions, except for bids: every Broker learns
+ * which of its links leads to each Seller (from the paths the Seller's
+ * AvailableItemEvents and advertisements take), and sends bids straight that
+ * way, so that they turn around at the lowest common ancestor of the Buyer
+ * and the Seller.
+ * 
  */
 public class Broker implements ClientHandlerDelegate,
-		BrokerClientHandlerDelegate, ServerListenerDelegate {
+		BrokerClientHandlerDelegate {
 
 	/** The globally known root Broker's listening port. */
 	public static final int ROOT_BROKER_PORT = 8808;
 
-	/** The maximum number of per-Broker connections. */
-	public static final int MAX_CONNECTIONS = 3;
+	/**
+	 * The globally known root Broker's Unix domain socket path (used instead
+	 * of the port if Settings.UNIX_DOMAIN_SOCKETS is set).
+	 */
+	public static final String ROOT_BROKER_PATH = new File(
+			System.getProperty("java.io.tmpdir"), "pubsub-root-broker.sock")
+			.getPath();
 
 	/** A unique identifier. */
 	private long identifier = 0;
 
+	/** Our configuration (e.g., the Transport of our Broker tree). */
+	private Configuration configuration;
+
 	/**
 	 * A running count of system participants (used by the root Broker to
 	 * generate unique identifiers).
 	 */
-	private long participantCount;
+	private AtomicLong participantCount;
 
-	/** Holds (children) client handlers. */
-	private ClientHandler[] clientHandlers;
+	/**
+	 * Serves accepted connections' join requests, so that a slow client does
+	 * not hold up the others.
+	 */
+	private ExecutorService admissionPool;
 
 	/**
-	 * The listening socket that accepts connections (only used by the root
-	 * Broker node).
+	 * The maximum numbers of child Brokers and of clients we accept (see
+	 * setMaxBrokers and setMaxClients).
 	 */
-	private ServerSocket serverSocket = null;
+	private volatile int maxBrokers;
+	private volatile int maxClients;
+
+	/** Holds (children) Broker handlers. */
+	private List<BrokerClientHandler> brokerHandlers;
+
+	/** Holds (children) client handlers (Buyers and Sellers). */
+	private List<ClientHandler> clientHandlers;
+
+	/**
+	 * Holds the handlers of clients being handed off to another spot in the
+	 * Broker tree (until they leave).
+	 */
+	private List<ClientHandler> departing;
+
+	/** The room left in our subtree as last reported to our parent. */
+	private CapacityEvent capacity = null;
+
+	/**
+	 * The number of Events we have handled (see receivedEvent), and the
+	 * number and time of our last load report.
+	 */
+	private AtomicLong eventsHandled;
+	private long reportedEventsHandled = 0;
+	private long reportedNanos = 0;
+
+	/**
+	 * The address of the last Broker we started to grow the Broker tree, and
+	 * the number of joining clients we may still send to it.
+	 */
+	private SocketAddress growthAddress = null;
+	private int growthSpots = 0;
+
+	/** The Brokers we started that joined the Broker tree. */
+	private List<Broker> grownBrokers;
+
+	/** Keeps track of the client handlers holding each subscription. */
+	private RoutingTable routingTable;
+
+	/** Keeps track of the client handlers holding each advertisement. */
+	private RoutingTable advertisementTable;
+
+	/** Encodes the Item names and attributes subscribed to at this Broker. */
+	private SymbolTable symbolTable;
+
+	/** Indexes the Item interests of all client handlers. */
+	private InterestMatcher interestMatcher;
+
+	/**
+	 * The link towards each Seller, by the prefix of its Items' identifiers
+	 * (see getSellerLink).
+	 */
+	private Map<String, ClientHandler> sellerLinks;
 
 	/**
-	 * A thread that listens for asynchronous server callbacks (only used by
-	 * non-root Broker nodes).
+	 * The listening socket that accepts join requests (on the globally known
+	 * port for the root Broker node, on any port for the others).
 	 */
-	private ServerListener serverListener = null;
+	private ServerSocket serverSocket = null;
 
 	/** The parent Broker handler. */
 	private BrokerClientHandler parentHandler = null;
 
+	/** True once the parent Broker handler has closed. */
+	private volatile boolean parentClosed = false;
+
+	/** Decides which subscriptions are forwarded over each Broker link. */
+	private Map<ClientHandler, SubscriptionForwarder> forwarders;
+
+	/**
+	 * Matches and dispatches events across links in parallel (only used if
+	 * Settings.PARALLEL_FAN_OUT is set).
+	 */
+	private ForkJoinPool fanOutPool = null;
+
+	/**
+	 * Serves all of our connections (only used if Settings.NIO_REACTOR is
+	 * set).
+	 */
+	private Reactor reactor = null;
+
 	public Broker() {
-		clientHandlers = new ClientHandler[MAX_CONNECTIONS];
+		this(new Configuration());
+	}
+
+	/**
+	 * Creates a Broker and starts it as the Broker tree's root node or joins
+	 * the Broker tree (the Broker keeps listening for join requests on a
+	 * thread of its own).
+	 * 
+	 * @param configuration
+	 */
+	public Broker(Configuration configuration) {
+		this(configuration, null);
+	}
+
+	/**
+	 * @param configuration
+	 * @param serverSocket
+	 *            the socket to serve join requests on once we have joined the
+	 *            Broker tree (null to start as the root node if there is
+	 *            none).
+	 */
+	private Broker(Configuration configuration, ServerSocket serverSocket) {
+		this.configuration = configuration;
+
+		participantCount = new AtomicLong();
+		admissionPool = Executors
+				.newFixedThreadPool(Settings.JOIN_ADMISSION_THREADS);
+		maxBrokers = configuration.getMaxBrokers();
+		maxClients = configuration.getMaxClients();
+		brokerHandlers = new CopyOnWriteArrayList<BrokerClientHandler>();
+		clientHandlers = new CopyOnWriteArrayList<ClientHandler>();
+		departing = new CopyOnWriteArrayList<ClientHandler>();
+		eventsHandled = new AtomicLong();
+		routingTable = new RoutingTable();
+		advertisementTable = new RoutingTable();
+		forwarders = new ConcurrentHashMap<ClientHandler, SubscriptionForwarder>();
+		symbolTable = new SymbolTable();
+		interestMatcher = new InterestMatcher(symbolTable);
+		sellerLinks = new ConcurrentHashMap<String, ClientHandler>();
+		grownBrokers = new CopyOnWriteArrayList<Broker>();
+
+		if (Settings.PARALLEL_FAN_OUT)
+			fanOutPool = new ForkJoinPool();
+
+		if (Settings.NIO_REACTOR && !Settings.BINARY_CODEC) {
+			System.err.println("The Reactor requires the binary codec "
+					+ "(using a thread per connection instead).");
+		} else if (Settings.NIO_REACTOR) {
+			try {
+				reactor = new Reactor();
+				reactor.start();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		if (serverSocket != null) {
+			// we were started to grow the Broker tree
+			this.serverSocket = serverSocket;
+			try {
+				initializeAsInternal();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 
 		try {
 			// attempt to initialize as the root Broker
@@ -69,6 +257,8 @@ public class Broker implements ClientHandlerDelegate,
 		} catch (IOException e) {
 			try {
 				// the root Broker already exists, join the Broker tree
+				System.out.println("fail!");
+				System.out.println("(Root node already exists.)");
 				initializeAsInternal();
 
 			} catch (IOException e1) {
@@ -82,14 +272,14 @@ public class Broker implements ClientHandlerDelegate,
 	 * Attempts to initialize the Broker as the Broker tree root node.
 	 * 
 	 * @throws IOException
-	 *             thrown if the dedicated root node port is in use (i.e., the
-	 *             root node already exists).
+	 *             thrown if the dedicated root node port (or path) is in use
+	 *             (i.e., the root node already exists).
 	 */
 	public void initializeAsRoot() throws IOException {
 		System.out
 				.print("Attempting to start as the Broker tree's root node...");
 
-		serverSocket = new ServerSocket(ROOT_BROKER_PORT);
+		serverSocket = configuration.getTransport().listen(true);
 
 		identifier = generateUniqueIdentifier();
 
@@ -99,7 +289,7 @@ public class Broker implements ClientHandlerDelegate,
 
 		// begin listening for client connections
 		System.out.println("Listening for connections...");
-		listen();
+		startListening();
 	}
 
 	/**
@@ -109,22 +299,28 @@ public class Broker implements ClientHandlerDelegate,
 	 *             thrown if the tree cannot be joined.
 	 */
 	public void initializeAsInternal() throws IOException {
-		System.out.println("fail!");
-		System.out.println("(Root node already exists.)");
 		System.out.print("Joining the Broker tree...");
 
-		serverListener = new ServerListener(this);
-		serverListener.start();
-
-		Socket socket = new Socket("localhost", Broker.ROOT_BROKER_PORT);
-		ObjectOutputStream out = new ObjectOutputStream(
-				socket.getOutputStream());
-
-		// request a spot in the Broker tree
-		out.writeObject(new JoinRequestEvent(serverListener.getPort(),
-				ClientType.BROKER));
-		out.flush();
+		Transport transport = configuration.getTransport();
+		if (serverSocket == null)
+			serverSocket = transport.listen(false);
+
+		// request a spot in the Broker tree (on the port or path we serve
+		// join requests on)
+		JoinRequestEvent request = new JoinRequestEvent(
+				serverSocket.getLocalPort(), ClientType.BROKER);
+		request.setPath(transport.getPath(serverSocket
+				.getLocalSocketAddress()));
+
+		JoinHandshake join = JoinHandshake.join(request, transport);
+		if (!connected(join.getIdentifier(), join.getSocket(),
+				join.getChannel(), join.getAccepted())) {
+			serverSocket.close();
+			return;
+		}
 
+		// serve join requests redirected to us
+		startListening();
 	}
 
 	/**
@@ -136,25 +332,75 @@ public class Broker implements ClientHandlerDelegate,
 	 * @return a unique participant identifier.
 	 */
 	private long generateUniqueIdentifier() {
-		return participantCount++;
+		return participantCount.getAndIncrement();
+	}
+
+	/**
+	 * Starts listening for join requests on a thread of its own (see
+	 * Threads).
+	 */
+	private void startListening() {
+		Threads.start(new Runnable() {
+			@Override
+			public void run() {
+				listen();
+			}
+		});
 	}
 
 	/**
-	 * Listens for Broker tree join requests. (Run by the Broker tree root.)
+	 * Listens for Broker tree join requests (sent to the root, or redirected
+	 * to us by our parent).
 	 */
 	public void listen() {
-		while (true) {
+		while (!serverSocket.isClosed()) {
 			try {
 				// listen for connections
-				Socket socket = serverSocket.accept();
+				final Socket socket = serverSocket.accept();
+
+				// serve the join request off of the listening thread
+				admissionPool.execute(new Runnable() {
+					@Override
+					public void run() {
+						admit(socket);
+					}
+				});
 
-				ObjectInputStream in = new ObjectInputStream(
-						socket.getInputStream());
+			} catch (IOException e) {
+				if (!serverSocket.isClosed())
+					e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Reads and serves the join request of an accepted connection. The
+	 * connection is dropped if the request does not arrive in time.
+	 * 
+	 * @param socket
+	 *            the accepted connection.
+	 */
+	private void admit(Socket socket) {
+		try {
+			socket.setSoTimeout(Settings.JOIN_TIMEOUT_MILLIS);
+			EventChannel channel = EventChannel.open(socket);
+
+			// read the join request
+			Event request = channel.read();
+			if (!(request instanceof JoinRequestEvent)) {
+				System.err.println("Expected a join request, received "
+						+ request);
+				close(socket, channel);
+				return;
+			}
 
-				// read the join request
-				JoinRequestEvent event = (JoinRequestEvent) in.readObject();
+			socket.setSoTimeout(0);
+			JoinRequestEvent event = (JoinRequestEvent) request;
 
-				// generate a unique identifier for this (potential) client
+			// generate a unique identifier for this (potential) client
+			// (only the root Broker assigns identifiers, and a client handed
+			// off by another Broker already has one)
+			if (parentHandler == null && event.getIdentifier() == 0) {
 				event.setIdentifier(generateUniqueIdentifier());
 
 				if (Settings.DEBUG_BROKER)
@@ -162,15 +408,24 @@ public class Broker implements ClientHandlerDelegate,
 							.println("Broker tree root received a new connection request"
 									+ " and assigned the unique identifier Participant-#"
 									+ Long.toString(event.getIdentifier()));
+			}
 
-				receivedJoinRequest(event);
+			receivedJoinRequest(event, socket, channel);
 
-			} catch (IOException e) {
-				e.printStackTrace();
-			} catch (ClassNotFoundException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+		} catch (SocketTimeoutException e) {
+			System.err.println("Timed out waiting for a join request from "
+					+ socket.getRemoteSocketAddress());
+			close(socket);
+		} catch (EOFException e) {
+			// closed without a request (e.g., probed by a Broker checking
+			// whether we are listening)
+			close(socket);
+		} catch (IOException e) {
+			e.printStackTrace();
+			close(socket);
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+			close(socket);
 		}
 	}
 
@@ -180,38 +435,92 @@ public class Broker implements ClientHandlerDelegate,
 	 * 
 	 * @param event
 	 *            the join request.
+	 * @param socket
+	 *            the connection the request was received on.
+	 * @param channel
+	 *            the connection's event channel.
+	 * @return the new client's handler (null if the connection failed).
 	 */
-	private void acceptConnectionRequest(JoinRequestEvent event) {
+	private ClientHandler acceptConnectionRequest(JoinRequestEvent event,
+			Socket socket, EventChannel channel) {
 		// create a handler for this connection
-		ClientHandler handler = null;
 		ClientType clientType = event.getClientType();
-		if (clientType.equals(ClientType.BROKER)) {
-			handler = new BrokerClientHandler(event.getIdentifier(),
-					event.getPort(), true, this);
+		if (clientType == null) {
+			System.err
+					.println("Attempted to accept a connection request from unknown client type");
+			close(socket, channel);
+			return null;
+		}
 
-		} else if (clientType.equals(ClientType.BUYER)) {
-			handler = new BuyerClientHandler(event.getIdentifier(),
-					event.getPort(), true, this);
+		EventChannel linkChannel = channel;
+		SharedMemoryChannel sharedMemory = null;
+		try {
+			// carry the link over shared memory if we both offer to and are
+			// on the same machine, otherwise compress it if we both offer to
+			if (event.getSharedMemory() && JoinHandshake.offersSharedMemory()
+					&& socket.getInetAddress().isLoopbackAddress())
+				sharedMemory = SharedMemoryChannel.create(socket);
+			else if (event.getCompression()
+					&& JoinHandshake.offersCompression())
+				channel.setCompression(new LinkCompression());
+
+			// acknowledge the request (over the socket)
+			channel.write(new JoinRequestAckEvent(event.getIdentifier(), true,
+					channel.getCompression() != null,
+					sharedMemory != null ? sharedMemory.getPath() : null));
+			channel.flush();
+
+			if (sharedMemory != null)
+				linkChannel = sharedMemory;
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			// (closing the shared memory deletes its file)
+			if (sharedMemory != null)
+				close(socket, sharedMemory);
+			close(socket, channel);
+			return null;
+		}
 
-		} else if (clientType.equals(ClientType.SELLER)) {
-			handler = new SellerClientHandler(event.getIdentifier(),
-					event.getPort(), true, this);
+		// create a handler for this connection
+		ClientHandler handler = null;
+		if (ClientType.BROKER.equals(clientType)) {
+			SocketAddress joinAddress = event.getPath() != null ? configuration
+					.getTransport().getAddress(event.getPath())
+					: new InetSocketAddress(socket.getInetAddress(),
+							event.getPort());
+			handler = new BrokerClientHandler(event.getIdentifier(), socket,
+					linkChannel, joinAddress, this);
+
+		} else if (ClientType.BUYER.equals(clientType)) {
+			handler = new BuyerClientHandler(event.getIdentifier(), socket,
+					linkChannel, this);
 
 		} else {
-			System.err
-					.println("Attempted to accept a connection request from unknown client type");
-			return;
+			handler = new SellerClientHandler(event.getIdentifier(), socket,
+					linkChannel, this);
 		}
 
-		// keep track of the handler and start it up
-		for (int i = 0; i < MAX_CONNECTIONS; i++) {
-			if (clientHandlers[i] != null)
-				continue;
-
-			clientHandlers[i] = handler;
-			handler.start();
-			break;
+		synchronized (routingTable) {
+			// start the handler up and keep track of it (once it has a
+			// writer, see getLoad)
+			handler.activate(reactor);
+			if (handler instanceof BrokerClientHandler)
+				brokerHandlers.add((BrokerClientHandler) handler);
+			else
+				clientHandlers.add(handler);
+
+			if (handler instanceof BrokerClientHandler) {
+				forwarders.put(handler, new SubscriptionForwarder(handler));
+
+				// tell the new Broker about all known publications
+				for (Event advertisement : advertisementTable.getEntries())
+					handler.sendEvent(advertisement);
+			}
 		}
+
+		reportCapacity();
+		return handler;
 	}
 
 	/**
@@ -219,23 +528,223 @@ public class Broker implements ClientHandlerDelegate,
 	 * 
 	 * @param event
 	 *            the join request.
+	 * @param socket
+	 *            the connection the request was received on.
+	 * @param channel
+	 *            the connection's event channel.
 	 */
-	private void rejectConnectionRequest(JoinRequestEvent event) {
+	private void rejectConnectionRequest(JoinRequestEvent event,
+			Socket socket, EventChannel channel) {
 		try {
-			Socket socket = new Socket("localhost", event.getPort());
-			ObjectOutputStream out = new ObjectOutputStream(
-					socket.getOutputStream());
-			new ObjectInputStream(socket.getInputStream()); // necessary to
-															// match client's
-															// ObjectOutputStream
+			channel.write(new JoinRequestAckEvent(-1L, false));
+			channel.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 
-			out.writeObject(new JoinRequestAckEvent(-1L, false));
+		close(socket, channel);
+	}
+
+	/**
+	 * Redirects a Broker tree join request to one of our children.
+	 * 
+	 * @param event
+	 *            the join request.
+	 * @param socket
+	 *            the connection the request was received on.
+	 * @param channel
+	 *            the connection's event channel.
+	 * @param branch
+	 *            the child Broker to redirect the client to.
+	 */
+	private void redirectConnectionRequest(JoinRequestEvent event,
+			Socket socket, EventChannel channel, BrokerClientHandler branch) {
+		redirectConnectionRequest(event, socket, channel,
+				branch.getJoinAddress());
+	}
 
-		} catch (UnknownHostException e) {
-			// TODO Auto-generated catch block
+	/**
+	 * Redirects a Broker tree join request to the Broker serving join
+	 * requests on an address.
+	 */
+	private void redirectConnectionRequest(JoinRequestEvent event,
+			Socket socket, EventChannel channel, SocketAddress address) {
+		try {
+			channel.write(createRedirect(event.getIdentifier(), address));
+			channel.flush();
+		} catch (IOException e) {
 			e.printStackTrace();
+		}
+
+		close(socket, channel);
+	}
+
+	/**
+	 * Creates a redirect to the Broker serving join requests on an address.
+	 * 
+	 * @param identifier
+	 *            the identifier of the redirected client.
+	 * @param address
+	 */
+	private JoinRedirectEvent createRedirect(long identifier,
+			SocketAddress address) {
+		String path = configuration.getTransport().getPath(address);
+		if (path != null)
+			return new JoinRedirectEvent(identifier, path);
+
+		return new JoinRedirectEvent(identifier,
+				((InetSocketAddress) address).getHostString(),
+				((InetSocketAddress) address).getPort());
+	}
+
+	/**
+	 * Hands one of our clients off to the nearest available client spot in
+	 * our subtree (or, if there is none, to the root Broker, which places it
+	 * anew): the client is sent the subscriptions we hold for it and
+	 * redirected (we keep serving the client until it leaves; see
+	 * ServerHandler).
+	 * 
+	 * @param client
+	 */
+	private void handOffClient(ClientHandler client) {
+		BrokerClientHandler branch = getBestBranch(false);
+		SocketAddress address = branch != null ? branch.getJoinAddress()
+				: configuration.getTransport().getRootAddress();
+
+		clientHandlers.remove(client);
+		departing.add(client);
+
+		if (Settings.DEBUG_BROKER)
+			System.out.println("Handing Participant-#"
+					+ Long.toString(client.getIdentifer()) + " off to "
+					+ address);
+
+		client.handOff();
+		for (Event subscription : client.getSubscriptions())
+			client.sendEvent(new SubscriptionEvent(subscription));
+		client.sendEvent(createRedirect(client.getIdentifer(), address));
+
+		if (branch != null)
+			branch.addedSubTreeNode();
+	}
+
+	/**
+	 * Grows the Broker tree to make room for a joining client. The client is
+	 * sent on towards the best spot for a child Broker in our subtree, if any
+	 * (see getBestBranch). Otherwise, if we have such a spot ourselves, we
+	 * start a new Broker (in our JVM, with our fan-out), which joins the
+	 * Broker tree like any other, and redirect the client to it. As many
+	 * joining clients as the new Broker has spots for are sent to it before
+	 * another one is started. Without any spot for a Broker, the client is
+	 * rejected.
+	 * 
+	 * @param event
+	 *            the join request (of a Buyer or Seller).
+	 * @param socket
+	 *            the connection the request was received on.
+	 * @param channel
+	 *            the connection's event channel.
+	 */
+	private void growConnectionRequest(JoinRequestEvent event, Socket socket,
+			EventChannel channel) {
+		if (growthSpots > 0) {
+			growthSpots--;
+			redirectConnectionRequest(event, socket, channel, growthAddress);
+			return;
+		}
+
+		// grow where the Broker tree has room for another Broker, as deep
+		// down as the spot is (rather than in this JVM)
+		BrokerClientHandler branch = getBestBranch(true);
+		if (branch != null) {
+			redirectConnectionRequest(event, socket, channel, branch);
+			branch.addedSubTreeNode();
+			return;
+		}
+
+		if (!hasSpot(true) || maxClients <= 0) {
+			if (Settings.DEBUG_BROKER)
+				System.out
+						.println("Rejecting connection request from Participant-#"
+								+ Long.toString(event.getIdentifier())
+								+ " (no room to grow the Broker tree)");
+
+			rejectConnectionRequest(event, socket, channel);
+			return;
+		}
+
+		// the new Broker listens right away, so the client can connect while
+		// it joins
+		final Transport transport = configuration.getTransport();
+		final ServerSocket growthSocket;
+		try {
+			growthSocket = transport.listen(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+			rejectConnectionRequest(event, socket, channel);
+			return;
+		}
+
+		SocketAddress address = growthSocket.getLocalSocketAddress();
+		if (transport.getPath(address) == null)
+			address = new InetSocketAddress(socket.getLocalAddress(),
+					growthSocket.getLocalPort());
+
+		if (Settings.DEBUG_BROKER)
+			System.out.println("Starting a Broker on " + address
+					+ " to grow the Broker tree");
+
+		final SocketAddress startedAddress = address;
+		final Configuration growthConfiguration = new Configuration(transport,
+				true, maxBrokers, maxClients);
+		Threads.start(new Runnable() {
+			@Override
+			public void run() {
+				Broker broker = new Broker(growthConfiguration, growthSocket);
+
+				// stop sending clients to the new Broker if it could not join
+				// (and turn away those already sent to it)
+				if (broker.parentHandler != null) {
+					grownBrokers.add(broker);
+				} else {
+					try {
+						growthSocket.close();
+					} catch (IOException e) {
+						// already closed
+					}
+
+					synchronized (clientHandlers) {
+						if (startedAddress.equals(growthAddress)) {
+							growthAddress = null;
+							growthSpots = 0;
+						}
+					}
+				}
+			}
+		});
+
+		growthAddress = address;
+		growthSpots = maxClients - 1;
+		redirectConnectionRequest(event, socket, channel, growthAddress);
+	}
+
+	/**
+	 * Closes a connection that no handler was created for.
+	 */
+	private static void close(Socket socket, EventChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		close(socket);
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 	}
@@ -244,129 +753,629 @@ public class Broker implements ClientHandlerDelegate,
 
 	@Override
 	public void receivedEvent(Event event, ClientHandler handler) {
-		if (event instanceof JoinRequestEvent)
-			return; // this is a special case handled by a BrokerClientHandler
+		if (event instanceof SubscriptionEvent
+				|| event instanceof UnsubscriptionEvent
+				|| event instanceof AdvertisementEvent
+				|| event instanceof UnadvertisementEvent
+				|| event instanceof CapacityEvent
+				|| event instanceof LoadEvent)
+			return; // consumed by the receiving handler (see subscribe)
+
+		eventsHandled.incrementAndGet();
+
+		if (event instanceof AvailableItemEvent) {
+			// the Item's Seller is on the side the Item came from
+			String prefix = Item.getSellerPrefix(((AvailableItemEvent) event)
+					.getItem().getId());
+			if (prefix != null)
+				sellerLinks.put(prefix, handler);
+
+		} else if (event instanceof BidEvent) {
+			// send the bid straight towards the Item's Seller (bids are not
+			// subscribed to across Brokers; see subscribe)
+			ClientHandler seller = getSellerLink(((BidEvent) event)
+					.getItemId());
+			if (seller != null) {
+				if (!seller.equals(handler))
+					seller.sendEvent(event);
+				return;
+			}
+		}
 
-		// only propagate "relevant" events down the Broker tree
-		// (towards event-subscribed clients)
-		for (ClientHandler h : clientHandlers) {
-			if (h == null || h.equals(handler) || !h.isSubscribed(event))
-				continue;
+		// rule out the links whose subscription summaries exclude the event
+		List<ClientHandler> candidates = new ArrayList<ClientHandler>();
+		for (ClientHandler h : getLinks()) {
+			if (!h.equals(handler) && h.mightBeSubscribed(event))
+				candidates.add(h);
+		}
+
+		if (candidates.isEmpty())
+			return;
 
-			h.sendEvent(event);
+		// match available Items against all handlers' interests at once
+		Set<ClientHandler> interested = null;
+		if (event instanceof AvailableItemEvent)
+			interested = interestMatcher.match(((AvailableItemEvent) event)
+					.getItem());
+
+		// only propagate "relevant" events through the Broker tree (towards
+		// event-subscribed clients, including our parent if something outside
+		// of our subtree has subscribed)
+		// (the event is encoded at most once, however many links it is sent
+		// over)
+		EncodedEvent encoded = new EncodedEvent(event);
+
+		if (fanOutPool != null) {
+			// wait for the dispatch to complete so that events are still sent
+			// over each link in the order they were received
+			fanOutPool.invoke(new FanOutTask(encoded, candidates, interested));
+			return;
 		}
 
-		// propagate all events up the Broker tree (towards the root)
-		if (!(parentHandler == null || handler.equals(parentHandler)))
-			parentHandler.sendEvent(event);
+		for (ClientHandler h : candidates)
+			dispatch(encoded, h, interested);
 	}
 
-	@Override
-	public void subscribe(Event event) {
-		// notify our parent
-		if (parentHandler == null)
+	/**
+	 * Sends an event to a handler if the handler is subscribed to it.
+	 * 
+	 * @param event
+	 *            the event.
+	 * @param handler
+	 *            the candidate handler.
+	 * @param interested
+	 *            the handlers interested in an AvailableItemEvent (null for
+	 *            other events).
+	 */
+	private static void dispatch(EncodedEvent event, ClientHandler handler,
+			Set<ClientHandler> interested) {
+		if (interested != null ? !interested.contains(handler) : !handler
+				.isSubscribed(event.getEvent()))
 			return;
 
-		parentHandler.sendEvent(new SubscriptionEvent(event));
+		handler.sendEvent(event);
 	}
 
-	@Override
-	public void unsubscribe(Event event) {
-		// notify our parent
-		if (parentHandler == null)
-			return;
+	/**
+	 * Matches and dispatches an event to each of a list of candidate handlers
+	 * in parallel.
+	 */
+	private static class FanOutTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private EncodedEvent event;
+		private List<ClientHandler> candidates;
+		private Set<ClientHandler> interested;
+
+		private FanOutTask(EncodedEvent event, List<ClientHandler> candidates,
+				Set<ClientHandler> interested) {
+			this.event = event;
+			this.candidates = candidates;
+			this.interested = interested;
+		}
 
-		parentHandler.sendEvent(new UnsubscriptionEvent(event));
+		@Override
+		protected void compute() {
+			int size = candidates.size();
+			if (size == 1) {
+				dispatch(event, candidates.get(0), interested);
+				return;
+			}
+
+			invokeAll(new FanOutTask(event, candidates.subList(0, size / 2),
+					interested), new FanOutTask(event, candidates.subList(
+					size / 2, size), interested));
+		}
 	}
 
 	@Override
-	public void close(ClientHandler handler) {
-		for (int i = 0; i < MAX_CONNECTIONS; i++) {
-			if (clientHandlers[i] != null && clientHandlers[i].equals(handler)) {
-				clientHandlers[i] = null;
-				break;
+	public void subscribe(Event event, ClientHandler handler) {
+		if (event instanceof InterestEvent)
+			interestMatcher.add(((InterestEvent) event).getItemTemplate(),
+					handler);
+
+		synchronized (routingTable) {
+			if (!routingTable.add(event, handler))
+				return;
+
+			// (Sellers' subscriptions to bids stay with their Broker, as bids
+			// find their Seller through sellerLinks)
+			if (event instanceof BidEvent)
+				return;
+
+			// tell every other Broker link whose side of the tree advertises
+			// matching publications, but only of the first reference from
+			// outside of that side
+			for (ClientHandler link : getBrokerLinks()) {
+				if (link.equals(handler)
+						|| routingTable.getReferences(event, link) != 1
+						|| !link.isAdvertised(event))
+					continue;
+
+				forwarders.get(link).subscribe(event);
 			}
 		}
 	}
 
-	/* BrokerClientHandlerDelegate Interface Implementation */
+	@Override
+	public void unsubscribe(Event event, ClientHandler handler) {
+		if (event instanceof InterestEvent)
+			interestMatcher.remove(((InterestEvent) event).getItemTemplate(),
+					handler);
+
+		synchronized (routingTable) {
+			if (!routingTable.remove(event, handler))
+				return;
+
+			if (event instanceof BidEvent)
+				return;
+
+			// tell every other Broker link of the last reference from outside
+			// of its side of the tree
+			for (ClientHandler link : getBrokerLinks()) {
+				if (link.equals(handler)
+						|| routingTable.getReferences(event, link) != 0)
+					continue;
+
+				forwarders.get(link).unsubscribe(event);
+			}
+		}
+	}
 
 	@Override
-	public void receivedJoinRequest(JoinRequestEvent event) {
-		if (Settings.DEBUG_BROKER)
-			System.out.println("Handling a connection request...");
+	public void advertise(AdvertisementEvent advertisement,
+			ClientHandler handler) {
+		synchronized (routingTable) {
+			if (!advertisementTable.add(advertisement, handler))
+				return;
+
+			// a Seller's Items are published from the advertising side (the
+			// latest advertisement wins, e.g., once a Seller is handed off)
+			if (advertisement.getType() == AvailableItemEvent.class
+					&& advertisement.getItemPrefix() != null)
+				sellerLinks.put(advertisement.getItemPrefix(), handler);
+
+			// advertisements are flooded to every other Broker link
+			for (ClientHandler link : getBrokerLinks()) {
+				if (link.equals(handler)
+						|| advertisementTable.getReferences(advertisement,
+								link) != 1)
+					continue;
+
+				link.sendEvent(advertisement);
+			}
 
-		// propagate the new client towards the next available
-		// spot in the tree
+			// subscriptions held outside of the advertising side of the tree
+			// must now be sent towards it
+			SubscriptionForwarder forwarder = forwarders.get(handler);
+			if (forwarder == null)
+				return;
+
+			for (Event subscription : routingTable.getEntries()) {
+				if (!(subscription instanceof BidEvent)
+						&& advertisement.intersects(subscription)
+						&& routingTable.getReferences(subscription, handler) > 0)
+					forwarder.subscribe(subscription);
+			}
+		}
+	}
 
-		// identify the branch with the smallest subtree
-		int minSubTree = Integer.MAX_VALUE;
-		ClientHandler minBranch = null;
-		for (int i = 0; i < MAX_CONNECTIONS; i++) {
-			if (clientHandlers[i] == null) {
-				minBranch = null;
-				break;
+	@Override
+	public void unadvertise(AdvertisementEvent advertisement,
+			ClientHandler handler) {
+		synchronized (routingTable) {
+			if (!advertisementTable.remove(advertisement, handler))
+				return;
+
+			if (advertisement.getItemPrefix() != null)
+				sellerLinks.remove(advertisement.getItemPrefix(), handler);
+
+			for (ClientHandler link : getBrokerLinks()) {
+				if (link.equals(handler)
+						|| advertisementTable.getReferences(advertisement,
+								link) != 0)
+					continue;
+
+				link.sendEvent(new UnadvertisementEvent(advertisement));
 			}
+		}
+	}
 
-			if (clientHandlers[i] instanceof BuyerClientHandler
-					|| clientHandlers[i] instanceof SellerClientHandler) {
-				if (i == MAX_CONNECTIONS - 1) {
-					// we're at the bottom of the Broker tree and there are
-					// no available connection spots, so we must reject this
-					// connection request
-					if (Settings.DEBUG_BROKER)
-						System.out
-								.println("Rejecting connection request from Participant-#"
-										+ Long.toString(event.getIdentifier()));
-
-					rejectConnectionRequest(event);
-					return;
-				}
+	@Override
+	public SymbolTable getSymbolTable() {
+		return symbolTable;
+	}
 
-				// continue looking
-				continue;
-			}
+	@Override
+	public void close(ClientHandler handler) {
+		if (handler == parentHandler)
+			parentClosed = true;
+
+		// release the handler's subscriptions and advertisements
+		for (Event subscription : handler.getSubscriptions())
+			unsubscribe(subscription, handler);
+
+		for (AdvertisementEvent advertisement : handler.getAdvertisements())
+			unadvertise(advertisement, handler);
+
+		forwarders.remove(handler);
 
-			ClientHandler branch = clientHandlers[i];
-			if (branch.getSubTreeSize() < minSubTree) {
-				minSubTree = branch.getSubTreeSize();
-				minBranch = branch;
+		// forget the Sellers located through the handler
+		sellerLinks.values().removeAll(Collections.singleton(handler));
+
+		synchronized (clientHandlers) {
+			if (departing.remove(handler))
+				return;
+
+			if (!brokerHandlers.remove(handler))
+				clientHandlers.remove(handler);
+			reportCapacity();
+		}
+	}
+
+	/* BrokerClientHandlerDelegate Interface Implementation */
+
+	@Override
+	public void capacityChanged(BrokerClientHandler handler) {
+		reportCapacity();
+	}
+
+	/**
+	 * Returns the link towards the Seller of an Item (learned from the paths
+	 * the Seller's AvailableItemEvents and advertisements took to us), or null
+	 * if we do not know where the Seller is.
+	 * 
+	 * @param itemId
+	 */
+	private ClientHandler getSellerLink(String itemId) {
+		String prefix = Item.getSellerPrefix(itemId);
+		if (prefix == null)
+			return null;
+
+		ClientHandler link = sellerLinks.get(prefix);
+		if (link != null)
+			return link;
+
+		// fall back on the link holding the Seller's advertisement (e.g., if
+		// an Item listed before the Seller moved reached us last)
+		AdvertisementEvent advertisement = new AdvertisementEvent(
+				AvailableItemEvent.class, prefix);
+		for (ClientHandler h : getLinks()) {
+			if (h.hasAdvertisement(advertisement)) {
+				sellerLinks.put(prefix, h);
+				return h;
 			}
 		}
 
-		if (minBranch == null) {
+		return null;
+	}
+
+	/**
+	 * Returns the handlers of all of our connections (children, including
+	 * those being handed off, and parent).
+	 */
+	private List<ClientHandler> getLinks() {
+		List<ClientHandler> links = new ArrayList<ClientHandler>();
+		links.addAll(brokerHandlers);
+		links.addAll(clientHandlers);
+		links.addAll(departing);
+
+		if (parentHandler != null)
+			links.add(parentHandler);
+
+		return links;
+	}
+
+	/**
+	 * Returns the handlers of our connections to other Brokers (children and
+	 * parent).
+	 */
+	private List<ClientHandler> getBrokerLinks() {
+		List<ClientHandler> links = new ArrayList<ClientHandler>();
+		for (ClientHandler h : getLinks()) {
+			if (forwarders.containsKey(h))
+				links.add(h);
+		}
+
+		return links;
+	}
+
+	/**
+	 * Serves a Broker tree join request: the request is accepted if we have an
+	 * available spot for the joining kind of client (Broker, or Buyer or
+	 * Seller), and otherwise redirected towards the branch with the best such
+	 * spot (see getBestBranch). If there is none, Buyers and Sellers are sent
+	 * on to grow the Broker tree (see growConnectionRequest), or rejected if
+	 * Settings.BROKER_TREE_GROWTH is not set.
+	 * 
+	 * @param event
+	 *            the join request.
+	 * @param socket
+	 *            the connection the request was received on.
+	 * @param channel
+	 *            the connection's event channel.
+	 */
+	private void receivedJoinRequest(JoinRequestEvent event, Socket socket,
+			EventChannel channel) {
+		// (join requests are served concurrently, but placed one at a time)
+		synchronized (clientHandlers) {
+			placeJoinRequest(event, socket, channel);
+		}
+	}
+
+	private void placeJoinRequest(JoinRequestEvent event, Socket socket,
+			EventChannel channel) {
+		if (Settings.DEBUG_BROKER)
+			System.out.println("Handling a connection request...");
+
+		// redirect the new client towards an available spot in the tree, as
+		// shallow and lightly loaded as possible (Brokers and other clients
+		// have spots of their own)
+		boolean broker = ClientType.BROKER.equals(event.getClientType());
+		BrokerClientHandler branch = getBestBranch(broker);
+
+		if (hasSpot(broker) && !isDeparting(event.getIdentifier())) {
 			// we have an available connection spot
 			if (Settings.DEBUG_BROKER)
 				System.out
 						.println("Accepting connection request from Participant-#"
 								+ Long.toString(event.getIdentifier()));
 
-			acceptConnectionRequest(event);
+			acceptConnectionRequest(event, socket, channel);
 
-		} else {
-			// propagate the connection request downwards towards along
-			// the branch with the smallest subtree
+		} else if (branch != null) {
+			// redirect the connection request downwards along the branch
+			// with the best available spot
 			if (Settings.DEBUG_BROKER)
 				System.out
-						.println("Propagating connection request from Participant-#"
+						.println("Redirecting connection request from Participant-#"
 								+ Long.toString(event.getIdentifier())
 								+ " to Participant-#"
-								+ Long.toString(minBranch.getIdentifer()));
+								+ Long.toString(branch.getIdentifer()));
 
-			minBranch.sendEvent(event);
-			minBranch.addedSubTreeNode();
+			redirectConnectionRequest(event, socket, channel, branch);
+			branch.addedSubTreeNode();
+
+		} else if (!broker && Settings.BROKER_TREE_GROWTH) {
+			// there is no room left below us, so the Broker tree must grow
+			growConnectionRequest(event, socket, channel);
+
+		} else {
+			// there are no available connection spots below us, so we must
+			// reject this connection request
+			if (Settings.DEBUG_BROKER)
+				System.out
+						.println("Rejecting connection request from Participant-#"
+								+ Long.toString(event.getIdentifier()));
+
+			rejectConnectionRequest(event, socket, channel);
+		}
+
+	}
+
+	/**
+	 * Returns true if we have an available spot for a Broker or for a client.
+	 * 
+	 * @param broker
+	 *            true for a Broker's spot, false for a client's.
+	 */
+	private boolean hasSpot(boolean broker) {
+		return broker ? brokerHandlers.size() < maxBrokers : clientHandlers
+				.size() < maxClients;
+	}
+
+	/**
+	 * Returns true if the participant is one of our clients being handed off
+	 * (which must not be placed with us again).
+	 */
+	private boolean isDeparting(long identifier) {
+		for (ClientHandler h : departing) {
+			if (h.getIdentifer() == identifier)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the child Broker whose subtree is best placed to take a Broker
+	 * or a client: of the subtrees with an available spot, the one with the
+	 * lowest score (see getScore), or null if no subtree has a spot.
+	 * 
+	 * @param broker
+	 *            true for a Broker's spot, false for a client's.
+	 */
+	private BrokerClientHandler getBestBranch(boolean broker) {
+		BrokerClientHandler best = null;
+		double bestScore = Double.MAX_VALUE;
+		for (BrokerClientHandler branch : brokerHandlers) {
+			int depth = branch.getSpotDepth(broker);
+			if (depth < 0)
+				continue;
+
+			double score = getScore(branch, depth);
+			if (score < bestScore) {
+				best = branch;
+				bestScore = score;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Scores how costly it is to place a client in a branch (in Events per
+	 * second): the depth of the branch's available spot, and the branch's
+	 * reported event rate, queued Events (including those queued on our link
+	 * to it), and participants, each weighed by their Settings.PLACEMENT_*
+	 * weight.
+	 * 
+	 * @param branch
+	 * @param depth
+	 *            the depth of the branch's available spot.
+	 */
+	private static double getScore(BrokerClientHandler branch, int depth) {
+		LoadEvent load = branch.getLoad();
+		int queued = load.getQueueDepth() + branch.getWriter().getDepth();
+
+		return Settings.PLACEMENT_DEPTH_WEIGHT * depth + load.getEventRate()
+				+ Settings.PLACEMENT_QUEUE_WEIGHT * queued
+				+ Settings.PLACEMENT_CONNECTION_WEIGHT * branch.getSubTreeSize();
+	}
+
+	/**
+	 * Returns the depth (below us, 0 meaning our own) of the nearest available
+	 * spot in our subtree for a Broker or for a client (-1 if there is none).
+	 */
+	private int getSpotDepth(boolean broker) {
+		if (hasSpot(broker))
+			return 0;
+
+		int nearest = -1;
+		for (BrokerClientHandler branch : brokerHandlers) {
+			int depth = branch.getSpotDepth(broker);
+			if (depth >= 0 && (nearest < 0 || depth + 1 < nearest))
+				nearest = depth + 1;
+		}
+
+		return nearest;
+	}
+
+	/**
+	 * Reports the room left in our subtree to our parent (if it has changed
+	 * since our last report).
+	 */
+	private void reportCapacity() {
+		synchronized (clientHandlers) {
+			if (parentHandler == null || parentClosed)
+				return;
+
+			CapacityEvent capacity = new CapacityEvent(getSpotDepth(true),
+					getSpotDepth(false));
+			if (capacity.equals(this.capacity))
+				return;
+
+			this.capacity = capacity;
+			parentHandler.sendEvent(capacity);
+		}
+	}
+
+	/**
+	 * Reports how busy our subtree is to our parent every
+	 * Settings.LOAD_REPORT_MILLIS (until we lose our parent or stop serving
+	 * join requests).
+	 */
+	private void reportLoad() {
+		reportedNanos = System.nanoTime();
+		while (true) {
+			try {
+				Thread.sleep(Settings.LOAD_REPORT_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			if (parentClosed || serverSocket.isClosed())
+				return;
+
+			parentHandler.sendEvent(getLoad());
+		}
+	}
+
+	/**
+	 * Returns the load of our subtree: our own event rate (since the last
+	 * report) and the Events queued on our connections to our children,
+	 * plus the reported load of each child Broker's subtree.
+	 */
+	private LoadEvent getLoad() {
+		long now = System.nanoTime();
+		long handled = eventsHandled.get();
+		float eventRate = (handled - reportedEventsHandled) * 1e9f
+				/ Math.max(1, now - reportedNanos);
+		reportedEventsHandled = handled;
+		reportedNanos = now;
+
+		int queueDepth = 0;
+		int connections = 0;
+		for (ClientHandler h : clientHandlers) {
+			queueDepth += h.getWriter().getDepth();
+			connections++;
 		}
 
+		for (BrokerClientHandler branch : brokerHandlers) {
+			LoadEvent load = branch.getLoad();
+			eventRate += load.getEventRate();
+			queueDepth += branch.getWriter().getDepth() + load.getQueueDepth();
+			connections += 1 + load.getConnections();
+		}
+
+		return new LoadEvent(eventRate, queueDepth, connections);
+	}
+
+	/**
+	 * Returns the number of Events we have handled (see receivedEvent).
+	 */
+	public long getEventsHandled() {
+		return eventsHandled.get();
 	}
 
-	/* ServerListenerDelegate Interface Implementation */
+	/**
+	 * Returns the Brokers we started to grow the Broker tree (see
+	 * growConnectionRequest).
+	 */
+	public List<Broker> getGrownBrokers() {
+		return grownBrokers;
+	}
+
+	public int getMaxBrokers() {
+		return maxBrokers;
+	}
 
-	public void connected(long identifier, Socket socket, ObjectInputStream in,
-			ObjectOutputStream out, boolean accepted) {
+	/**
+	 * Changes the maximum number of child Brokers we accept (child Brokers
+	 * beyond a lowered maximum stay).
+	 * 
+	 * @param maxBrokers
+	 */
+	public void setMaxBrokers(int maxBrokers) {
+		synchronized (clientHandlers) {
+			this.maxBrokers = maxBrokers;
+			reportCapacity();
+		}
+	}
+
+	public int getMaxClients() {
+		return maxClients;
+	}
+
+	/**
+	 * Changes the maximum number of clients we accept (clients beyond a
+	 * lowered maximum are handed off to other spots in the Broker tree).
+	 * 
+	 * @param maxClients
+	 */
+	public void setMaxClients(int maxClients) {
+		synchronized (clientHandlers) {
+			this.maxClients = maxClients;
+			reportCapacity();
+
+			while (clientHandlers.size() > maxClients)
+				handOffClient(clientHandlers.get(clientHandlers.size() - 1));
+		}
+	}
+
+	/**
+	 * Called once our own join request has been acknowledged.
+	 * 
+	 * @return true if we joined the Broker tree.
+	 */
+	private boolean connected(long identifier, Socket socket,
+			EventChannel channel, boolean accepted) {
 		if (!accepted) {
 			System.out.println("fail!");
 			System.err.println("Could not join the Broker tree.");
-			System.exit(1);
+			if (!configuration.isEmbedded())
+				System.exit(1);
+			return false;
 		}
 
 		System.out.println("success!");
@@ -374,12 +1383,33 @@ public class Broker implements ClientHandlerDelegate,
 				+ Long.toString(identifier) + ")");
 
 		this.identifier = identifier;
-		parentHandler = new BrokerClientHandler(identifier, socket, in, out,
-				false, this);
-		parentHandler.start();
+		parentHandler = new BrokerClientHandler(identifier, socket, channel,
+				this);
+		forwarders.put(parentHandler, new SubscriptionForwarder(parentHandler));
+		parentHandler.activate(reactor);
+
+		// tell our parent how much room we have, and keep telling it how busy
+		// we are
+		reportCapacity();
+		Threads.start(new Runnable() {
+			@Override
+			public void run() {
+				reportLoad();
+			}
+		});
+		return true;
 	}
 
+	/**
+	 * Usage: Broker [maxBrokers] [maxClients]
+	 */
 	public static void main(String[] args) {
-		new Broker();
+		int maxBrokers = args.length > 0 ? Integer.parseInt(args[0])
+				: Settings.MAX_CHILD_BROKERS;
+		int maxClients = args.length > 1 ? Integer.parseInt(args[1])
+				: Settings.MAX_CLIENTS;
+
+		new Broker(new Configuration(Transport.getDefault(), false,
+				maxBrokers, maxClients));
 	}
 }
@@ -1,12 +1,14 @@
 package edu.courses.middleware.pubsub;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.net.SocketAddress;
 
-import edu.courses.middleware.pubsub.events.JoinRequestEvent;
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
+import edu.courses.middleware.pubsub.events.CapacityEvent;
 import edu.courses.middleware.pubsub.events.Event;
+import edu.courses.middleware.pubsub.events.LoadEvent;
 import edu.courses.middleware.pubsub.events.SubscriptionEvent;
+import edu.courses.middleware.pubsub.events.UnadvertisementEvent;
 import edu.courses.middleware.pubsub.events.UnsubscriptionEvent;
 
 /**
@@ -16,43 +18,90 @@ import edu.courses.middleware.pubsub.events.UnsubscriptionEvent;
  */
 public class BrokerClientHandler extends ClientHandler {
 
-	private BrokerClientHandlerDelegate delegate;
+	/**
+	 * The address a child Broker serves join requests on (null for our
+	 * parent).
+	 */
+	private SocketAddress joinAddress;
 
-	public BrokerClientHandler(long identifier, Socket socket, ObjectInputStream in,
-			ObjectOutputStream out, boolean ack, ClientHandlerDelegate delegate) {
-		super(identifier, socket, in, out, ack, delegate);
+	/**
+	 * The room left in a child Broker's subtree, as last reported (see
+	 * CapacityEvent); a new Broker has room of its own until it reports.
+	 */
+	private volatile CapacityEvent capacity = new CapacityEvent(0, 0);
 
-		this.delegate = (BrokerClientHandlerDelegate) delegate;
+	/** The load of a child Broker's subtree, as last reported. */
+	private volatile LoadEvent load = new LoadEvent(0f, 0, 0);
+
+	/** We issue Broker-specific callbacks to our delegate. */
+	private BrokerClientHandlerDelegate brokerDelegate;
+
+	public BrokerClientHandler(long identifier, Socket socket,
+			EventChannel channel, BrokerClientHandlerDelegate delegate) {
+		this(identifier, socket, channel, null, delegate);
+	}
+
+	public BrokerClientHandler(long identifier, Socket socket,
+			EventChannel channel, SocketAddress joinAddress,
+			BrokerClientHandlerDelegate delegate) {
+		super(identifier, socket, channel, delegate);
+
+		this.joinAddress = joinAddress;
+		this.brokerDelegate = delegate;
+	}
+
+	/**
+	 * Returns the address the Broker serves join requests on (null for our
+	 * parent).
+	 */
+	public SocketAddress getJoinAddress() {
+		return joinAddress;
 	}
 
-	public BrokerClientHandler(long identifier, int port, boolean ack,
-			ClientHandlerDelegate delegate) {
-		super(identifier, port, ack, delegate);
+	/**
+	 * Returns the depth (below the Broker) of the nearest available spot in
+	 * its subtree for a Broker or for a client, as last reported (-1 if there
+	 * is none).
+	 * 
+	 * @param broker
+	 *            true for a Broker's spot, false for a client's.
+	 */
+	public int getSpotDepth(boolean broker) {
+		return broker ? capacity.getBrokerDepth() : capacity.getClientDepth();
+	}
 
-		this.delegate = (BrokerClientHandlerDelegate) delegate;
+	/**
+	 * Returns the load of the Broker's subtree, as last reported.
+	 */
+	public LoadEvent getLoad() {
+		return load;
 	}
 
 	@Override
 	public void process(Event event) {
-		if (event instanceof JoinRequestEvent) {
-			receivedConnectionRequest((JoinRequestEvent) event);
-
-		} else if (event instanceof SubscriptionEvent) {
+		if (event instanceof SubscriptionEvent) {
 			receivedSubscription((SubscriptionEvent) event);
 
 		} else if (event instanceof UnsubscriptionEvent) {
 			receivedUnsubscription((UnsubscriptionEvent) event);
 
+		} else if (event instanceof AdvertisementEvent) {
+			receivedAdvertisement((AdvertisementEvent) event);
+
+		} else if (event instanceof UnadvertisementEvent) {
+			receivedUnadvertisement((UnadvertisementEvent) event);
+
+		} else if (event instanceof CapacityEvent) {
+			receivedCapacity((CapacityEvent) event);
+
+		} else if (event instanceof LoadEvent) {
+			receivedLoad((LoadEvent) event);
+
 		} else {
 			// ignore
 		}
 	}
 
-	private void receivedConnectionRequest(JoinRequestEvent event) {
-		// inform the delegate
-		delegate.receivedJoinRequest(event);
-	}
-
 	private void receivedSubscription(SubscriptionEvent event) {
 		// store the subscription locally
 		subscribe(event.getSubscription());
@@ -62,4 +111,28 @@ public class BrokerClientHandler extends ClientHandler {
 		// remove the local subscription
 		unsubscribe(event.getUnsubscription());
 	}
+
+	private void receivedAdvertisement(AdvertisementEvent event) {
+		// store the advertisement locally
+		advertise(event);
+	}
+
+	private void receivedUnadvertisement(UnadvertisementEvent event) {
+		// remove the local advertisement
+		unadvertise(event.getAdvertisement());
+	}
+
+	private void receivedCapacity(CapacityEvent event) {
+		// store the capacity locally
+		capacity = event;
+
+		// notify delegate of the change
+		brokerDelegate.capacityChanged(this);
+	}
+
+	private void receivedLoad(LoadEvent event) {
+		// store the load locally (the reported subtree replaces our count)
+		load = event;
+		setSubTreeSize(event.getConnections());
+	}
 }
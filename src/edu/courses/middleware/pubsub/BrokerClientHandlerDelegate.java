@@ -1,7 +1,5 @@
 package edu.courses.middleware.pubsub;
 
-import edu.courses.middleware.pubsub.events.JoinRequestEvent;
-
 /**
  * Defines the callbacks used by the BrokerClientHandler.
  *
@@ -9,12 +7,12 @@ import edu.courses.middleware.pubsub.events.JoinRequestEvent;
 public interface BrokerClientHandlerDelegate extends ClientHandlerDelegate {
 
 	/**
-	 * Called when a BrokerClientHandler receives a request to join the Broker
-	 * tree.
+	 * Called when a child Broker reports a change of the room left in its
+	 * subtree.
 	 * 
-	 * @param event
-	 *            the join request.
+	 * @param handler
+	 *            the child Broker's handler.
 	 */
-	public void receivedJoinRequest(JoinRequestEvent event);
+	public void capacityChanged(BrokerClientHandler handler);
 
 }
@@ -21,6 +21,9 @@ import edu.courses.middleware.pubsub.ui.BuyerUIHandlerDelegate;
  * two modes: user-driven (user must manually re-bid if outbid) and automatic
  * (Buyer will automatically re-bid, up to a limit, if outbid on an item).
  * 
+ * An embedded Buyer (see Configuration) has no command line interface and is
+ * controlled by its program instead (see Simulation).
+ * 
  */
 public class Buyer implements BuyerServerHandlerDelegate,
 		BuyerUIHandlerDelegate {
@@ -31,8 +34,11 @@ public class Buyer implements BuyerServerHandlerDelegate,
 	/** Manages the network connection to the Broker tree. */
 	private BuyerServerHandler serverHandler;
 
-	/** Manages the user interface thread. */
-	private BuyerUIHandler uiHandler;
+	/** Manages the user interface thread (null if we are embedded). */
+	private BuyerUIHandler uiHandler = null;
+
+	/** Our configuration (e.g., the Transport of our Broker tree). */
+	private Configuration configuration;
 
 	/** Holds the Items matching the Buyer's subscribed interests. */
 	private Map<String, Item> itemsOfInterest;
@@ -47,13 +53,23 @@ public class Buyer implements BuyerServerHandlerDelegate,
 	private Map<String, BuyerItem> itemsLost;
 
 	public Buyer() {
+		this(new Configuration());
+	}
+
+	public Buyer(Configuration configuration) {
+		this.configuration = configuration;
+
 		serverHandler = new BuyerServerHandler(this);
-		uiHandler = new BuyerUIHandler(this);
+		if (!configuration.isEmbedded())
+			uiHandler = new BuyerUIHandler(this);
 
 		itemsOfInterest = new ConcurrentHashMap<String, Item>();
 		itemsBidding = new ConcurrentHashMap<String, BuyerItem>();
 		itemsPurchased = new ConcurrentHashMap<String, BuyerItem>();
 		itemsLost = new ConcurrentHashMap<String, BuyerItem>();
+
+		// join the Broker tree
+		serverHandler.connect(configuration.getTransport());
 	}
 
 	/* BuyerUIHandlerDelegate Interface Implementation */
@@ -102,6 +118,14 @@ public class Buyer implements BuyerServerHandlerDelegate,
 		serverHandler.sendEvent(event);
 	}
 
+	/**
+	 * Returns true once we have joined the Broker tree (an embedded Buyer
+	 * whose join request was rejected is left unconnected).
+	 */
+	public boolean isConnected() {
+		return serverHandler.isConnected();
+	}
+
 	/* BuyerServerHandlerDelegate Interface Implementation */
 
 	@Override
@@ -116,13 +140,15 @@ public class Buyer implements BuyerServerHandlerDelegate,
 
 		// now we can start interacting with our sever and user
 		serverHandler.start();
-		uiHandler.start();
+		if (uiHandler != null)
+			uiHandler.start();
 	}
 
 	@Override
 	public void close(ServerHandler handler) {
 		System.out.println("Closing Buyer.");
-		System.exit(0);
+		if (!configuration.isEmbedded())
+			System.exit(0);
 	}
 
 	@Override
@@ -137,7 +163,8 @@ public class Buyer implements BuyerServerHandlerDelegate,
 		itemsOfInterest.put(item.getId(), item);
 
 		// alert the user
-		uiHandler.deliver(event);
+		if (uiHandler != null)
+			uiHandler.deliver(event);
 	}
 
 	@Override
@@ -155,7 +182,8 @@ public class Buyer implements BuyerServerHandlerDelegate,
 			item.setBid(event.getBid());
 
 			// alert the user
-			uiHandler.deliver(event);
+			if (uiHandler != null)
+				uiHandler.deliver(event);
 
 			if (identifier != event.getBuyerId()) {
 				// we've been outbid!
@@ -183,7 +211,8 @@ public class Buyer implements BuyerServerHandlerDelegate,
 
 		} else if (itemsBidding.containsKey(event.getItemId())) {
 			// alert the user
-			uiHandler.deliver(event);
+			if (uiHandler != null)
+				uiHandler.deliver(event);
 
 			BuyerItem item = itemsBidding.remove(event.getItemId());
 
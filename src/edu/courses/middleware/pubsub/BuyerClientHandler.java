@@ -1,10 +1,14 @@
 package edu.courses.middleware.pubsub;
 
+import java.net.Socket;
+
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
 import edu.courses.middleware.pubsub.events.BidEvent;
 import edu.courses.middleware.pubsub.events.BidUpdateEvent;
 import edu.courses.middleware.pubsub.events.Event;
 import edu.courses.middleware.pubsub.events.InterestEvent;
 import edu.courses.middleware.pubsub.events.SaleFinalizedEvent;
+import edu.courses.middleware.pubsub.events.SubscriptionEvent;
 
 /**
  * A ClientHandler used by Brokers specifically for Buyer clients.
@@ -12,9 +16,15 @@ import edu.courses.middleware.pubsub.events.SaleFinalizedEvent;
  */
 public class BuyerClientHandler extends ClientHandler {
 
-	public BuyerClientHandler(long identifier, int port, boolean ack,
-			ClientHandlerDelegate delegate) {
-		super(identifier, port, ack, delegate);
+	public BuyerClientHandler(long identifier, Socket socket,
+			EventChannel channel, ClientHandlerDelegate delegate) {
+		super(identifier, socket, channel, delegate);
+	}
+
+	@Override
+	protected void advertisePublications() {
+		// Buyers bid on any Item
+		advertise(new AdvertisementEvent(BidEvent.class, null));
 	}
 
 	@Override
@@ -25,6 +35,9 @@ public class BuyerClientHandler extends ClientHandler {
 		} else if (event instanceof BidEvent) {
 			receivedBid((BidEvent) event);
 
+		} else if (event instanceof SubscriptionEvent) {
+			receivedSubscription((SubscriptionEvent) event);
+
 		} else {
 			// ignore
 		}
@@ -41,4 +54,9 @@ public class BuyerClientHandler extends ClientHandler {
 		subscribe(new SaleFinalizedEvent(event.getItemId()));
 	}
 
+	private void receivedSubscription(SubscriptionEvent event) {
+		// restore a subscription held for the client by the Broker it was
+		// handed off from (see ServerHandler)
+		subscribe(event.getSubscription());
+	}
 }
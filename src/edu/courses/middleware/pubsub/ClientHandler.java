@@ -1,14 +1,13 @@
 package edu.courses.middleware.pubsub;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import edu.courses.middleware.pubsub.events.JoinRequestAckEvent;
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
 import edu.courses.middleware.pubsub.events.Event;
 
 /**
@@ -22,88 +21,125 @@ import edu.courses.middleware.pubsub.events.Event;
  * This class should be extended for specific types of clients.
  * 
  */
-public abstract class ClientHandler extends Thread {
+public abstract class ClientHandler implements Runnable {
 	/** The client's unique identifier. */
 	protected long identifier;
 
 	/** The socket used to communicate with the client. */
 	protected Socket socket = null;
 
-	/** Input/output streams. */
-	protected ObjectInputStream in = null;
-	protected ObjectOutputStream out = null;
+	/** Reads/writes events over the socket. */
+	protected EventChannel channel = null;
+
+	/** Writes queued events to the channel (see activate). */
+	protected EventSender writer = null;
 
 	/** We issue callbacks to our delegate. */
 	protected ClientHandlerDelegate delegate;
 
 	/**
-	 * A list of the client's (and possibly the client's subtree's)
+	 * A table of the client's (and possibly the client's subtree's)
 	 * subscriptions.
 	 */
-	protected List<Event> subscriptions;
-
-	/** The size of the client's subtree. */
-	private int subTreeSize;
+	protected SubscriptionTable subscriptions;
 
-	public ClientHandler(long identifier, Socket socket, ObjectInputStream in,
-			ObjectOutputStream out, boolean ack, ClientHandlerDelegate delegate) {
-		super();
+	/**
+	 * The publications advertised by the client (and possibly the client's
+	 * subtree).
+	 */
+	protected Set<AdvertisementEvent> advertisements;
 
-		try {
-			this.identifier = identifier;
-			this.socket = socket;
-			this.in = in;
-			this.out = out;
-			this.delegate = delegate;
+	/**
+	 * The size of the client's subtree (as last reported, plus the clients
+	 * sent to it since; see LoadEvent).
+	 */
+	private volatile int subTreeSize;
 
-			if (ack)
-				out.writeObject(new JoinRequestAckEvent(identifier, true));
+	/**
+	 * True once the client is being handed off to another Broker (so it is
+	 * expected to close its connection).
+	 */
+	private volatile boolean handedOff = false;
 
-			subscriptions = new ArrayList<Event>();
-			subTreeSize = 0;
+	public ClientHandler(long identifier, Socket socket, EventChannel channel,
+			ClientHandlerDelegate delegate) {
+		this.identifier = identifier;
+		this.socket = socket;
+		this.channel = channel;
+		this.delegate = delegate;
+
+		subscriptions = new SubscriptionTable(delegate.getSymbolTable());
+		advertisements = ConcurrentHashMap.newKeySet();
+		subTreeSize = 0;
+	}
 
-		} catch (UnknownHostException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	/**
+	 * Starts handling the client: on the handler's own thread (see Threads),
+	 * or on a Broker's Reactor if one is given.
+	 * 
+	 * @param reactor
+	 *            the Reactor to serve the connection (may be null).
+	 */
+	public void activate(Reactor reactor) {
+		// (a Reactor can only serve sockets that have a channel, and cannot
+		// wait on shared memory)
+		if (reactor != null && socket.getChannel() != null
+				&& !(channel instanceof SharedMemoryChannel)) {
+			writer = reactor.register(this, socket.getChannel(),
+					channel.getCompression());
+			return;
 		}
-	}
 
-	public ClientHandler(long identifier, int port, boolean ack,
-			ClientHandlerDelegate delegate) {
-		super();
+		EventWriter eventWriter = new EventWriter(channel);
+		eventWriter.start();
+		writer = eventWriter;
 
-		try {
-			this.identifier = identifier;
-			this.delegate = delegate;
+		Threads.start(this);
+	}
 
-			this.socket = new Socket("localhost", port);
-			this.out = new ObjectOutputStream(socket.getOutputStream());
-			this.in = new ObjectInputStream(socket.getInputStream());
+	public long getIdentifer() {
+		return identifier;
+	}
 
-			if (ack)
-				out.writeObject(new JoinRequestAckEvent(identifier, true));
+	public List<Event> getSubscriptions() {
+		return subscriptions.getSubscriptions();
+	}
 
-			subscriptions = new ArrayList<Event>();
-			subTreeSize = 0;
+	public List<AdvertisementEvent> getAdvertisements() {
+		return new ArrayList<AdvertisementEvent>(advertisements);
+	}
 
-		} catch (UnknownHostException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+	/**
+	 * Returns true if the client holds the subscription.
+	 * 
+	 * @param event
+	 */
+	public boolean hasSubscription(Event event) {
+		return subscriptions.contains(event);
 	}
-	
-	public long getIdentifer() {
-		return identifier;
+
+	/**
+	 * Returns true if the client has advertised the publications.
+	 * 
+	 * @param advertisement
+	 */
+	public boolean hasAdvertisement(AdvertisementEvent advertisement) {
+		return advertisements.contains(advertisement);
 	}
 
-	public List<Event> getSubscriptions() {
-		return subscriptions;
+	/**
+	 * Returns true if the client advertises publications that could match the
+	 * subscription.
+	 * 
+	 * @param subscription
+	 */
+	public boolean isAdvertised(Event subscription) {
+		for (AdvertisementEvent advertisement : advertisements) {
+			if (advertisement.intersects(subscription))
+				return true;
+		}
+
+		return false;
 	}
 
 	public int getSubTreeSize() {
@@ -118,6 +154,17 @@ public abstract class ClientHandler extends Thread {
 		subTreeSize--;
 	}
 
+	public void setSubTreeSize(int subTreeSize) {
+		this.subTreeSize = subTreeSize;
+	}
+
+	/**
+	 * Marks the client as being handed off to another Broker.
+	 */
+	public void handOff() {
+		handedOff = true;
+	}
+
 	/**
 	 * Processes an event received from a client.
 	 * 
@@ -126,79 +173,143 @@ public abstract class ClientHandler extends Thread {
 	public abstract void process(Event event);
 
 	/**
-	 * Sends an event object to the client via the socket's output stream.
+	 * Queues an event object to be sent to the client via the socket's event
+	 * channel (never blocks).
 	 * 
 	 * @param event
 	 */
 	public void sendEvent(Event event) {
-		try {
-			out.writeObject(event);
-			out.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		writer.send(event);
+	}
+
+	/**
+	 * Queues an event object that may also be sent to other clients (it is
+	 * only encoded once).
+	 * 
+	 * @param event
+	 */
+	public void sendEvent(EncodedEvent event) {
+		writer.send(event);
+	}
+
+	/**
+	 * Returns the writer of the client's outbound queue (e.g., for its queue
+	 * depth metrics).
+	 */
+	public EventSender getWriter() {
+		return writer;
 	}
 
 	protected void subscribe(Event event) {
-		if (subscriptions.contains(event))
+		if (!subscriptions.add(event))
 			return;
 
-		subscriptions.add(event);
-
 		// notify delegate of subscription
-		delegate.subscribe(event);
+		delegate.subscribe(event, this);
 	}
 
 	protected void unsubscribe(Event event) {
-		subscriptions.remove(event);
+		if (!subscriptions.remove(event))
+			return;
 
 		// notify delegate of unsubscription
-		delegate.unsubscribe(event);
+		delegate.unsubscribe(event, this);
 	}
 
-	public boolean isSubscribed(Event event) {
-		for (Event subscription : subscriptions) {
-			if (subscription.matches(event))
-				return true;
-		}
+	protected void advertise(AdvertisementEvent advertisement) {
+		if (!advertisements.add(advertisement))
+			return;
 
-		return false;
+		// notify delegate of advertisement
+		delegate.advertise(advertisement, this);
+	}
+
+	protected void unadvertise(AdvertisementEvent advertisement) {
+		if (!advertisements.remove(advertisement))
+			return;
+
+		// notify delegate of unadvertisement
+		delegate.unadvertise(advertisement, this);
+	}
+
+	/**
+	 * Advertises the publications the client will make. Called before any
+	 * Event is read from the client.
+	 */
+	protected void advertisePublications() {
+		// nothing by default
+	}
+
+	/**
+	 * Returns false if the client is certainly not subscribed to the Event
+	 * (a cheap test that may return true even if it is not).
+	 * 
+	 * @param event
+	 */
+	public boolean mightBeSubscribed(Event event) {
+		return subscriptions.mightMatch(event);
+	}
+
+	public boolean isSubscribed(Event event) {
+		return subscriptions.matches(event);
 	}
 
 	@Override
 	public void run() {
+		advertisePublications();
+
 		while (true) {
 			try {
 				// read an event off the stream
-				Event event = (Event) in.readObject();
-
-				// process the event locally
-				process(event);
-
-				// propagate to the delegate
-				delegate.receivedEvent(event, this);
+				handle(channel.read());
 
 			} catch (IOException e) {
-				e.printStackTrace();
+				if (!handedOff)
+					e.printStackTrace();
 				close();
 				return;
 			} catch (ClassNotFoundException e) {
 				e.printStackTrace();
 				close();
 				return;
+			} catch (RuntimeException e) {
+				// an Event we failed to handle only costs the client its link
+				e.printStackTrace();
+				close();
+				return;
 			}
 		}
 	}
 
-	private void close() {
+	/**
+	 * Handles an event received from the client.
+	 * 
+	 * @param event
+	 */
+	protected void handle(Event event) {
+		// process the event locally
+		process(event);
+
+		// propagate to the delegate
+		delegate.receivedEvent(event, this);
+	}
+
+	protected void close() {
 		if (Settings.DEBUG_BROKER)
 			System.out.println("Closing ClientHandler for Participant-#" 
-					+ Long.toString(identifier));
+					+ Long.toString(identifier) + " (sent "
+					+ Long.toString(writer.getWritten()) + " events in "
+					+ Long.toString(writer.getFlushes())
+					+ " writes, at most "
+					+ Integer.toString(writer.getLargestBatch()) + " per write"
+					+ (channel.getCompression() != null ? "; "
+							+ channel.getCompression() : "") + ")");
 
 		try {
 			delegate.close(this);
-			in.close();
-			out.close();
+			subscriptions.clear();
+			writer.close();
+			channel.close();
 			socket.close();
 		} catch (IOException e) {
 			e.printStackTrace();
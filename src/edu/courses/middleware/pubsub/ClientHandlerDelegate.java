@@ -1,5 +1,6 @@
 package edu.courses.middleware.pubsub;
 
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
 import edu.courses.middleware.pubsub.events.Event;
 
 /**
@@ -22,15 +23,46 @@ public interface ClientHandlerDelegate {
 	 * Called when a ClientHandler subscribes to an Event.
 	 * 
 	 * @param event
+	 * @param handler
+	 *            the subscribing ClientHandler.
 	 */
-	public void subscribe(Event event);
+	public void subscribe(Event event, ClientHandler handler);
 
 	/**
 	 * Called when a ClientHandler unsubscribes from an Event.
 	 * 
 	 * @param event
+	 * @param handler
+	 *            the unsubscribing ClientHandler.
+	 */
+	public void unsubscribe(Event event, ClientHandler handler);
+
+	/**
+	 * Called when a ClientHandler learns of publications that will arrive
+	 * through it.
+	 * 
+	 * @param advertisement
+	 * @param handler
+	 *            the advertising ClientHandler.
+	 */
+	public void advertise(AdvertisementEvent advertisement,
+			ClientHandler handler);
+
+	/**
+	 * Called when a ClientHandler learns that advertised publications will no
+	 * longer arrive through it.
+	 * 
+	 * @param advertisement
+	 * @param handler
+	 *            the unadvertising ClientHandler.
+	 */
+	public void unadvertise(AdvertisementEvent advertisement,
+			ClientHandler handler);
+
+	/**
+	 * Returns the SymbolTable used to match the ClientHandlers' subscriptions.
 	 */
-	public void unsubscribe(Event event);
+	public SymbolTable getSymbolTable();
 
 	/**
 	 * Called when a ClientHandler has terminated for whatever reason.
@@ -0,0 +1,66 @@
+package edu.courses.middleware.pubsub;
+
+/**
+ * The configuration of a single participant (Broker, Buyer, or Seller).
+ * 
+ * Unlike Settings, which tunes every participant in the JVM alike, a
+ * Configuration is given to each participant when it is created, so that
+ * participants of different Broker trees, or with and without a user, may
+ * run in the same JVM.
+ * 
+ */
+public class Configuration {
+
+	/** Connects the participant to its Broker tree. */
+	private Transport transport;
+
+	/**
+	 * True if the participant is embedded in a larger program (e.g., a
+	 * Simulation): it has no command line interface and never exits the JVM.
+	 */
+	private boolean embedded;
+
+	/**
+	 * The maximum numbers of child Brokers and of clients (Buyers and
+	 * Sellers) a Broker accepts (its fan-out; a Broker may change these while
+	 * it runs, see Broker.setMaxBrokers and Broker.setMaxClients).
+	 */
+	private int maxBrokers;
+	private int maxClients;
+
+	/**
+	 * The configuration of a standalone participant (see Transport.getDefault).
+	 */
+	public Configuration() {
+		this(Transport.getDefault(), false);
+	}
+
+	public Configuration(Transport transport, boolean embedded) {
+		this(transport, embedded, Settings.MAX_CHILD_BROKERS,
+				Settings.MAX_CLIENTS);
+	}
+
+	public Configuration(Transport transport, boolean embedded,
+			int maxBrokers, int maxClients) {
+		this.transport = transport;
+		this.embedded = embedded;
+		this.maxBrokers = maxBrokers;
+		this.maxClients = maxClients;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	public boolean isEmbedded() {
+		return embedded;
+	}
+
+	public int getMaxBrokers() {
+		return maxBrokers;
+	}
+
+	public int getMaxClients() {
+		return maxClients;
+	}
+}
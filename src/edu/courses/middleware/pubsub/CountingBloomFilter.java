@@ -0,0 +1,95 @@
+package edu.courses.middleware.pubsub;
+
+/**
+ * A counting Bloom filter over 64-bit keys.
+ *
+ * Membership tests may return false positives but never false negatives.
+ * Each key sets (increments) a few one-byte counters; removing a key
+ * decrements them again. Counters that overflow stick at their maximum value
+ * and are never decremented, which can only add false positives.
+ *
+ * Keys are added and removed by a single thread at a time, while any number
+ * of threads may test membership concurrently.
+ *
+ */
+public class CountingBloomFilter {
+
+	/** The number of counters set per key. */
+	private static final int HASHES = 3;
+
+	/** The value at which a counter sticks. */
+	private static final int SATURATED = 0xFF;
+
+	private byte[] counters;
+
+	/** Written after every update so that readers see the latest counters. */
+	private volatile int modifications;
+
+	/**
+	 * @param size
+	 *            the number of counters (rounded up to a power of two).
+	 */
+	public CountingBloomFilter(int size) {
+		int capacity = Integer.highestOneBit(Math.max(size, 64) - 1) << 1;
+		counters = new byte[capacity];
+	}
+
+	public synchronized void add(long key) {
+		int h1 = hash(key);
+		int h2 = (h1 >>> 16) | 1;
+		for (int i = 0; i < HASHES; i++) {
+			int index = (h1 + i * h2) & (counters.length - 1);
+			int count = counters[index] & 0xFF;
+			if (count < SATURATED)
+				counters[index] = (byte) (count + 1);
+		}
+
+		modifications++;
+	}
+
+	public synchronized void remove(long key) {
+		int h1 = hash(key);
+		int h2 = (h1 >>> 16) | 1;
+		for (int i = 0; i < HASHES; i++) {
+			int index = (h1 + i * h2) & (counters.length - 1);
+			int count = counters[index] & 0xFF;
+			if (count > 0 && count < SATURATED)
+				counters[index] = (byte) (count - 1);
+		}
+
+		modifications++;
+	}
+
+	/**
+	 * Returns false if the key has definitely not been added.
+	 *
+	 * @param key
+	 */
+	public boolean mightContain(long key) {
+		if (modifications == 0)
+			return false;
+
+		int h1 = hash(key);
+		int h2 = (h1 >>> 16) | 1;
+		for (int i = 0; i < HASHES; i++) {
+			int index = (h1 + i * h2) & (counters.length - 1);
+			if (counters[index] == 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Spreads a key over 32 bits (murmur3 finalizer).
+	 */
+	private static int hash(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+}
@@ -0,0 +1,160 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import edu.courses.middleware.pubsub.events.AvailableItemEvent;
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * An Event together with its EventCodec frame, which is encoded at most once
+ * however many connections the Event is sent over.
+ * 
+ * The frame is encoded the first time it is needed (i.e., never if Java
+ * serialization is used) and is never modified afterwards, so every
+ * connection writes the same bytes. Likewise, the frame sent over links that
+ * compress (see LinkCompression) is compressed at most once.
+ * 
+ */
+public class EncodedEvent {
+
+	private Event event;
+
+	/** The frame (length prefix and payload), once encoded. */
+	private volatile byte[] frame = null;
+
+	/** The frame sent over links that compress, once compressed. */
+	private volatile byte[] compressedFrame = null;
+
+	public EncodedEvent(Event event) {
+		this.event = event;
+	}
+
+	public Event getEvent() {
+		return event;
+	}
+
+	/**
+	 * Returns true if the Event may be dropped when a connection's outbound
+	 * queue is full: a missed AvailableItemEvent only costs a client a
+	 * listing. Every other Event carries state one end relies on (e.g., an
+	 * automatic Buyer only bids again when a BidUpdateEvent tells it it was
+	 * outbid), so it is never dropped.
+	 */
+	public boolean isBestEffort() {
+		return event instanceof AvailableItemEvent;
+	}
+
+	/**
+	 * Returns a read-only view of the frame (each caller gets its own
+	 * position, so the view can be handed to a gathering write).
+	 */
+	public ByteBuffer getFrame() {
+		return ByteBuffer.wrap(encode()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the length of the frame.
+	 */
+	public int getFrameLength() {
+		return encode().length;
+	}
+
+	/**
+	 * Returns a read-only view of the frame to send over links that compress:
+	 * the frame with its payload compressed if the payload is at least
+	 * Settings.COMPRESSION_THRESHOLD bytes long and compresses at all, and
+	 * the plain frame otherwise.
+	 */
+	public ByteBuffer getCompressedFrame() {
+		return ByteBuffer.wrap(compress()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the length of the frame sent over links that compress.
+	 */
+	public int getCompressedFrameLength() {
+		return compress().length;
+	}
+
+	/**
+	 * Writes the frame to a stream.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(encode());
+	}
+
+	/**
+	 * Writes the frame sent over links that compress to a stream.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeCompressedTo(OutputStream out) throws IOException {
+		out.write(compress());
+	}
+
+	private byte[] encode() {
+		byte[] bytes = frame;
+		if (bytes == null) {
+			// (racing threads encode identical frames, any one will do)
+			bytes = toFrame(EventCodec.encode(event));
+			frame = bytes;
+		}
+
+		return bytes;
+	}
+
+	private byte[] compress() {
+		byte[] bytes = compressedFrame;
+		if (bytes == null) {
+			bytes = encode();
+
+			// skip the length prefix
+			int prefix = 1;
+			while ((bytes[prefix - 1] & 0x80) != 0)
+				prefix++;
+
+			int length = bytes.length - prefix;
+			if (length >= Settings.COMPRESSION_THRESHOLD) {
+				byte[] payload = EventCodec.compress(bytes, prefix, length);
+				if (payload != null)
+					bytes = toFrame(payload);
+			}
+
+			compressedFrame = bytes;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Prefixes a payload with its length.
+	 */
+	private static byte[] toFrame(byte[] payload) {
+		int prefix = 1;
+		for (int length = payload.length; (length & ~0x7F) != 0; length >>>= 7)
+			prefix++;
+
+		byte[] bytes = new byte[prefix + payload.length];
+		int position = 0;
+		int length = payload.length;
+		while ((length & ~0x7F) != 0) {
+			bytes[position++] = (byte) ((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		bytes[position++] = (byte) length;
+		System.arraycopy(payload, 0, bytes, position, payload.length);
+
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return event.toString();
+	}
+}
@@ -0,0 +1,90 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * An EventChannel reads and writes Events over a connection's socket.
+ * 
+ * The encoding is chosen by Settings.BINARY_CODEC: Java serialization (see
+ * ObjectEventChannel) or the binary EventCodec (see BinaryEventChannel). All
+ * participants must use the same encoding.
+ * 
+ */
+public abstract class EventChannel {
+
+	/** Compresses the channel's frames (null if the link does not compress). */
+	protected LinkCompression compression = null;
+
+	/**
+	 * Opens a channel over a connected socket using the configured encoding.
+	 * 
+	 * @param socket
+	 * @return the channel.
+	 * @throws IOException
+	 */
+	public static EventChannel open(Socket socket) throws IOException {
+		if (Settings.BINARY_CODEC)
+			return new BinaryEventChannel(socket);
+
+		return new ObjectEventChannel(socket);
+	}
+
+	/**
+	 * Starts compressing the channel's frames (only supported by the binary
+	 * EventCodec; see LinkCompression).
+	 * 
+	 * @param compression
+	 */
+	public void setCompression(LinkCompression compression) {
+		this.compression = compression;
+	}
+
+	public LinkCompression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Reads the next Event (blocks until one is available).
+	 * 
+	 * @return the Event.
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public abstract Event read() throws IOException, ClassNotFoundException;
+
+	/**
+	 * Writes an Event (it may be buffered until flush is called).
+	 * 
+	 * @param event
+	 * @throws IOException
+	 */
+	public abstract void write(Event event) throws IOException;
+
+	/**
+	 * Writes an Event that may also be written to other channels (it may be
+	 * buffered until flush is called).
+	 * 
+	 * @param event
+	 * @throws IOException
+	 */
+	public void write(EncodedEvent event) throws IOException {
+		write(event.getEvent());
+	}
+
+	/**
+	 * Flushes the Events written so far to the socket.
+	 * 
+	 * @throws IOException
+	 */
+	public abstract void flush() throws IOException;
+
+	/**
+	 * Closes the channel's streams.
+	 * 
+	 * @throws IOException
+	 */
+	public abstract void close() throws IOException;
+}
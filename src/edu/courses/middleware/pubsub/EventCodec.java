@@ -0,0 +1,764 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
+import edu.courses.middleware.pubsub.events.AvailableItemEvent;
+import edu.courses.middleware.pubsub.events.BidEvent;
+import edu.courses.middleware.pubsub.events.BidUpdateEvent;
+import edu.courses.middleware.pubsub.events.CapacityEvent;
+import edu.courses.middleware.pubsub.events.Event;
+import edu.courses.middleware.pubsub.events.InterestEvent;
+import edu.courses.middleware.pubsub.events.JoinRedirectEvent;
+import edu.courses.middleware.pubsub.events.JoinRequestAckEvent;
+import edu.courses.middleware.pubsub.events.JoinRequestEvent;
+import edu.courses.middleware.pubsub.events.JoinRequestEvent.ClientType;
+import edu.courses.middleware.pubsub.events.LoadEvent;
+import edu.courses.middleware.pubsub.events.SaleFinalizedEvent;
+import edu.courses.middleware.pubsub.events.SubscriptionEvent;
+import edu.courses.middleware.pubsub.events.UnadvertisementEvent;
+import edu.courses.middleware.pubsub.events.UnsubscriptionEvent;
+
+/**
+ * A compact binary encoding of Events (used instead of Java serialization if
+ * Settings.BINARY_CODEC is set).
+ *
+ * On the wire every Event is a frame: the payload length as a varint,
+ * followed by the payload. A payload starts with a one-byte tag identifying
+ * the Event class, followed by the Event's fields in a fixed order. Integers
+ * are zigzag varints, floats are 4 bytes, Strings are a varint byte length
+ * (plus one, zero meaning null) followed by UTF-8 bytes, and sets are a
+ * varint size (plus one, zero meaning null) followed by their elements.
+ * Nested Events (e.g., the subscription of a SubscriptionEvent) are encoded
+ * as payloads in place. A payload may also hold another, Deflate compressed,
+ * payload: a tag, the original payload's length as a varint, and the
+ * compressed bytes (see compress).
+ *
+ */
+public final class EventCodec {
+
+	/** Event class tags. */
+	private static final byte NULL = 0;
+	private static final byte ADVERTISEMENT = 1;
+	private static final byte AVAILABLE_ITEM = 2;
+	private static final byte BID = 3;
+	private static final byte BID_UPDATE = 4;
+	private static final byte INTEREST = 5;
+	private static final byte JOIN_REQUEST = 6;
+	private static final byte JOIN_REQUEST_ACK = 7;
+	private static final byte SALE_FINALIZED = 8;
+	private static final byte SUBSCRIPTION = 9;
+	private static final byte UNADVERTISEMENT = 10;
+	private static final byte UNSUBSCRIPTION = 11;
+	private static final byte JOIN_REDIRECT = 12;
+
+	/** Marks a compressed payload (see compress). */
+	private static final byte COMPRESSED = 13;
+
+	private static final byte CAPACITY = 14;
+	private static final byte LOAD = 15;
+
+	/** Compresses payloads (one per thread, as Deflaters are not shareable). */
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED, true);
+		}
+	};
+
+	/** Decompresses payloads. */
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	/** The largest payload accepted by readFrame. */
+	public static final int MAX_FRAME_SIZE = 1 << 24;
+
+	/**
+	 * The deepest Events are nested in a payload (e.g., a subscription to an
+	 * InterestEvent is nested once).
+	 */
+	private static final int MAX_NESTING = 4;
+
+	private EventCodec() {
+	}
+
+	/**
+	 * Encodes an Event as a payload (without the frame's length prefix).
+	 *
+	 * @param event
+	 * @return the payload.
+	 */
+	public static byte[] encode(Event event) {
+		Output out = new Output();
+		writeEvent(out, event);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a payload.
+	 *
+	 * @param payload
+	 * @return the decoded Event.
+	 * @throws IOException
+	 *             thrown if the payload is malformed.
+	 */
+	public static Event decode(byte[] payload) throws IOException {
+		return decode(payload, 0, payload.length);
+	}
+
+	/**
+	 * Decodes a payload held in part of an array.
+	 *
+	 * @param buffer
+	 * @param offset
+	 *            the start of the payload.
+	 * @param length
+	 *            the payload length.
+	 * @return the decoded Event.
+	 * @throws IOException
+	 *             thrown if the payload is malformed.
+	 */
+	public static Event decode(byte[] buffer, int offset, int length)
+			throws IOException {
+		if (isCompressed(buffer, offset, length)) {
+			buffer = decompress(buffer, offset, length);
+			offset = 0;
+			length = buffer.length;
+		}
+
+		Input in = new Input(buffer, offset, offset + length);
+		Event event = readEvent(in, 0);
+		if (in.position != in.limit)
+			throw new StreamCorruptedException("Trailing bytes in frame");
+
+		return event;
+	}
+
+	/**
+	 * Compresses (Deflate) a payload held in part of an array. The result is
+	 * itself a payload, which decode decompresses before decoding it.
+	 *
+	 * @param buffer
+	 * @param offset
+	 *            the start of the payload.
+	 * @param length
+	 *            the payload length.
+	 * @return the compressed payload, or null if compression would not make
+	 *         the payload smaller.
+	 */
+	public static byte[] compress(byte[] buffer, int offset, int length) {
+		Output out = new Output();
+		out.write(COMPRESSED);
+		out.writeVarint(length);
+
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(buffer, offset, length);
+		deflater.finish();
+
+		byte[] chunk = new byte[Math.min(length, 8 * 1024)];
+		while (!deflater.finished()) {
+			int n = deflater.deflate(chunk);
+			out.write(chunk, 0, n);
+			if (out.size() >= length)
+				return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns true if a payload held in part of an array was compressed.
+	 *
+	 * @param buffer
+	 * @param offset
+	 *            the start of the payload.
+	 * @param length
+	 *            the payload length.
+	 */
+	public static boolean isCompressed(byte[] buffer, int offset, int length) {
+		return length > 0 && buffer[offset] == COMPRESSED;
+	}
+
+	/**
+	 * Decompresses a compressed payload held in part of an array.
+	 *
+	 * @param buffer
+	 * @param offset
+	 *            the start of the payload.
+	 * @param length
+	 *            the payload length.
+	 * @return the original payload.
+	 * @throws IOException
+	 *             thrown if the payload is malformed.
+	 */
+	public static byte[] decompress(byte[] buffer, int offset, int length)
+			throws IOException {
+		Input in = new Input(buffer, offset, offset + length);
+		if (in.readByte() != COMPRESSED)
+			throw new StreamCorruptedException("Payload is not compressed");
+
+		long size = in.readVarint();
+		if (size < 0 || size > MAX_FRAME_SIZE)
+			throw new StreamCorruptedException("Payload too large: " + size);
+
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(buffer, in.position, in.limit - in.position);
+
+		byte[] payload = new byte[(int) size];
+		try {
+			for (int n = 0; n < payload.length;) {
+				int inflated = inflater.inflate(payload, n, payload.length - n);
+				if (inflated == 0
+						&& (inflater.finished() || inflater.needsInput() || inflater
+								.needsDictionary()))
+					throw new EOFException("Truncated compressed payload");
+
+				n += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new StreamCorruptedException(e.getMessage());
+		}
+
+		// (a compressed payload never holds another compressed payload)
+		if (isCompressed(payload, 0, payload.length))
+			throw new StreamCorruptedException("Nested compressed payload");
+
+		return payload;
+	}
+
+	/**
+	 * Writes a payload as a frame.
+	 *
+	 * @param out
+	 * @param payload
+	 * @throws IOException
+	 */
+	public static void writeFrame(OutputStream out, byte[] payload)
+			throws IOException {
+		int length = payload.length;
+		while ((length & ~0x7F) != 0) {
+			out.write((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		out.write(length);
+		out.write(payload);
+	}
+
+	/**
+	 * Reads a frame's payload.
+	 *
+	 * @param in
+	 * @return the payload.
+	 * @throws IOException
+	 *             thrown if the stream ends or the frame is malformed.
+	 */
+	public static byte[] readFrame(InputStream in) throws IOException {
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			if (shift > 28)
+				throw new StreamCorruptedException("Malformed frame length");
+
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+
+		if (length < 0 || length > MAX_FRAME_SIZE)
+			throw new StreamCorruptedException("Frame too large: " + length);
+
+		byte[] payload = new byte[length];
+		for (int read = 0; read < length;) {
+			int n = in.read(payload, read, length - read);
+			if (n < 0)
+				throw new EOFException();
+			read += n;
+		}
+
+		return payload;
+	}
+
+	/* Encoding */
+
+	private static void writeEvent(Output out, Event event) {
+		if (event == null) {
+			out.write(NULL);
+
+		} else if (event instanceof AdvertisementEvent) {
+			AdvertisementEvent e = (AdvertisementEvent) event;
+			out.write(ADVERTISEMENT);
+			out.write(tagOf(e.getType()));
+			out.writeString(e.getItemPrefix());
+
+		} else if (event instanceof AvailableItemEvent) {
+			out.write(AVAILABLE_ITEM);
+			writeItem(out, ((AvailableItemEvent) event).getItem());
+
+		} else if (event instanceof BidEvent) {
+			BidEvent e = (BidEvent) event;
+			out.write(BID);
+			out.writeString(e.getItemId());
+			out.writeLong(e.getBuyerId());
+			out.writeFloat(e.getBid());
+
+		} else if (event instanceof BidUpdateEvent) {
+			BidUpdateEvent e = (BidUpdateEvent) event;
+			out.write(BID_UPDATE);
+			out.writeString(e.getItemId());
+			out.writeLong(e.getBuyerId());
+			out.writeFloat(e.getBid());
+
+		} else if (event instanceof CapacityEvent) {
+			CapacityEvent e = (CapacityEvent) event;
+			out.write(CAPACITY);
+			out.writeLong(e.getBrokerDepth());
+			out.writeLong(e.getClientDepth());
+
+		} else if (event instanceof InterestEvent) {
+			out.write(INTEREST);
+			writeTemplate(out, ((InterestEvent) event).getItemTemplate());
+
+		} else if (event instanceof JoinRequestEvent) {
+			JoinRequestEvent e = (JoinRequestEvent) event;
+			out.write(JOIN_REQUEST);
+			out.writeLong(e.getIdentifier());
+			out.writeLong(e.getPort());
+			out.write(e.getClientType() == null ? 0 : e.getClientType()
+					.ordinal() + 1);
+			out.write(e.getCompression() ? 1 : 0);
+			out.write(e.getSharedMemory() ? 1 : 0);
+			out.writeString(e.getPath());
+
+		} else if (event instanceof JoinRequestAckEvent) {
+			JoinRequestAckEvent e = (JoinRequestAckEvent) event;
+			out.write(JOIN_REQUEST_ACK);
+			out.writeLong(e.getIdentifier());
+			out.write(e.getAccepted() ? 1 : 0);
+			out.write(e.getCompression() ? 1 : 0);
+			out.writeString(e.getSharedMemoryPath());
+
+		} else if (event instanceof JoinRedirectEvent) {
+			JoinRedirectEvent e = (JoinRedirectEvent) event;
+			out.write(JOIN_REDIRECT);
+			out.writeLong(e.getIdentifier());
+			out.writeString(e.getHost());
+			out.writeLong(e.getPort());
+			out.writeString(e.getPath());
+
+		} else if (event instanceof LoadEvent) {
+			LoadEvent e = (LoadEvent) event;
+			out.write(LOAD);
+			out.writeFloat(e.getEventRate());
+			out.writeLong(e.getQueueDepth());
+			out.writeLong(e.getConnections());
+
+		} else if (event instanceof SaleFinalizedEvent) {
+			SaleFinalizedEvent e = (SaleFinalizedEvent) event;
+			out.write(SALE_FINALIZED);
+			out.writeString(e.getItemId());
+			out.writeLong(e.getBuyerId());
+
+		} else if (event instanceof SubscriptionEvent) {
+			out.write(SUBSCRIPTION);
+			writeEvent(out, ((SubscriptionEvent) event).getSubscription());
+
+		} else if (event instanceof UnadvertisementEvent) {
+			out.write(UNADVERTISEMENT);
+			writeEvent(out, ((UnadvertisementEvent) event).getAdvertisement());
+
+		} else if (event instanceof UnsubscriptionEvent) {
+			out.write(UNSUBSCRIPTION);
+			writeEvent(out, ((UnsubscriptionEvent) event).getUnsubscription());
+
+		} else {
+			throw new IllegalArgumentException("Cannot encode "
+					+ event.getClass().getName());
+		}
+	}
+
+	private static void writeItem(Output out, Item item) {
+		if (item == null) {
+			out.write(0);
+			return;
+		}
+
+		out.write(1);
+		out.writeString(item.getId());
+		out.writeString(item.getName());
+		out.writeStrings(item.getAttributes());
+		out.writeFloat(item.getReserve());
+		out.writeFloat(item.getBid());
+		out.writeLong(item.getBuyerId());
+	}
+
+	private static void writeTemplate(Output out, ItemTemplate template) {
+		if (template == null) {
+			out.write(0);
+			return;
+		}
+
+		out.write(1);
+		out.writeStrings(template.getNames());
+		out.writeStrings(template.getAttributes());
+		out.writeFloat(template.getBidMin());
+		out.writeFloat(template.getBidMax());
+		out.writeFloat(template.getReserveMin());
+		out.writeFloat(template.getReserveMax());
+	}
+
+	/* Decoding */
+
+	private static Event readEvent(Input in, int depth) throws IOException {
+		if (depth > MAX_NESTING)
+			throw new StreamCorruptedException("Events nested too deeply");
+
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+
+		case ADVERTISEMENT: {
+			Class<? extends Event> type = classOf(in.readByte());
+			return new AdvertisementEvent(type, in.readString());
+		}
+
+		case AVAILABLE_ITEM:
+			return new AvailableItemEvent(readItem(in));
+
+		case BID: {
+			String itemId = in.readString();
+			long buyerId = in.readLong();
+			return new BidEvent(itemId, buyerId, in.readFloat());
+		}
+
+		case BID_UPDATE: {
+			String itemId = in.readString();
+			long buyerId = in.readLong();
+			return new BidUpdateEvent(itemId, buyerId, in.readFloat());
+		}
+
+		case CAPACITY: {
+			int brokerDepth = (int) in.readLong();
+			return new CapacityEvent(brokerDepth, (int) in.readLong());
+		}
+
+		case INTEREST:
+			return new InterestEvent(readTemplate(in));
+
+		case JOIN_REQUEST: {
+			long identifier = in.readLong();
+			int port = (int) in.readLong();
+			int type = in.readByte();
+			if (type < 0 || type > ClientType.values().length)
+				throw new StreamCorruptedException("Unknown client type "
+						+ type);
+
+			JoinRequestEvent event = new JoinRequestEvent(port,
+					type == 0 ? null : ClientType.values()[type - 1]);
+			event.setIdentifier(identifier);
+			event.setCompression(in.readByte() != 0);
+			event.setSharedMemory(in.readByte() != 0);
+			event.setPath(in.readString());
+			return event;
+		}
+
+		case JOIN_REQUEST_ACK: {
+			long identifier = in.readLong();
+			boolean accepted = in.readByte() != 0;
+			boolean compression = in.readByte() != 0;
+			return new JoinRequestAckEvent(identifier, accepted, compression,
+					in.readString());
+		}
+
+		case JOIN_REDIRECT: {
+			long identifier = in.readLong();
+			String host = in.readString();
+			int port = (int) in.readLong();
+			String path = in.readString();
+			if (path != null)
+				return new JoinRedirectEvent(identifier, path);
+
+			return new JoinRedirectEvent(identifier, host, port);
+		}
+
+		case LOAD: {
+			float eventRate = in.readFloat();
+			int queueDepth = (int) in.readLong();
+			return new LoadEvent(eventRate, queueDepth, (int) in.readLong());
+		}
+
+		case SALE_FINALIZED: {
+			String itemId = in.readString();
+			return new SaleFinalizedEvent(itemId, in.readLong());
+		}
+
+		case SUBSCRIPTION:
+			return new SubscriptionEvent(readEvent(in, depth + 1));
+
+		case UNADVERTISEMENT: {
+			Event advertisement = readEvent(in, depth + 1);
+			if (advertisement != null
+					&& !(advertisement instanceof AdvertisementEvent))
+				throw new StreamCorruptedException(
+						"Unadvertisement of a non-advertisement");
+
+			return new UnadvertisementEvent((AdvertisementEvent) advertisement);
+		}
+
+		case UNSUBSCRIPTION:
+			return new UnsubscriptionEvent(readEvent(in, depth + 1));
+
+		default:
+			throw new StreamCorruptedException("Unknown event tag " + tag);
+		}
+	}
+
+	private static Item readItem(Input in) throws IOException {
+		if (in.readByte() == 0)
+			return null;
+
+		String id = in.readString();
+		String name = in.readString();
+		Set<String> attributes = in.readStrings();
+		float reserve = in.readFloat();
+		float bid = in.readFloat();
+		return new Item(id, name, attributes, reserve, bid, in.readLong());
+	}
+
+	private static ItemTemplate readTemplate(Input in) throws IOException {
+		if (in.readByte() == 0)
+			return null;
+
+		ItemTemplate template = new ItemTemplate();
+		Set<String> names = in.readStrings();
+		Set<String> attributes = in.readStrings();
+		if (names != null)
+			template.addNames(names);
+		if (attributes != null)
+			template.addAttributes(attributes);
+
+		template.setBidMin(in.readFloat());
+		template.setBidMax(in.readFloat());
+		template.setReserveMin(in.readFloat());
+		template.setReserveMax(in.readFloat());
+
+		return template;
+	}
+
+	/* Event class tags (for advertised types) */
+
+	private static byte tagOf(Class<? extends Event> type) {
+		if (type == null)
+			return NULL;
+		if (type == AdvertisementEvent.class)
+			return ADVERTISEMENT;
+		if (type == AvailableItemEvent.class)
+			return AVAILABLE_ITEM;
+		if (type == BidEvent.class)
+			return BID;
+		if (type == BidUpdateEvent.class)
+			return BID_UPDATE;
+		if (type == CapacityEvent.class)
+			return CAPACITY;
+		if (type == InterestEvent.class)
+			return INTEREST;
+		if (type == JoinRequestEvent.class)
+			return JOIN_REQUEST;
+		if (type == JoinRequestAckEvent.class)
+			return JOIN_REQUEST_ACK;
+		if (type == JoinRedirectEvent.class)
+			return JOIN_REDIRECT;
+		if (type == LoadEvent.class)
+			return LOAD;
+		if (type == SaleFinalizedEvent.class)
+			return SALE_FINALIZED;
+		if (type == SubscriptionEvent.class)
+			return SUBSCRIPTION;
+		if (type == UnadvertisementEvent.class)
+			return UNADVERTISEMENT;
+		if (type == UnsubscriptionEvent.class)
+			return UNSUBSCRIPTION;
+
+		throw new IllegalArgumentException("Cannot encode " + type.getName());
+	}
+
+	private static Class<? extends Event> classOf(byte tag) throws IOException {
+		switch (tag) {
+		case NULL:
+			return null;
+		case ADVERTISEMENT:
+			return AdvertisementEvent.class;
+		case AVAILABLE_ITEM:
+			return AvailableItemEvent.class;
+		case BID:
+			return BidEvent.class;
+		case BID_UPDATE:
+			return BidUpdateEvent.class;
+		case CAPACITY:
+			return CapacityEvent.class;
+		case INTEREST:
+			return InterestEvent.class;
+		case JOIN_REQUEST:
+			return JoinRequestEvent.class;
+		case JOIN_REQUEST_ACK:
+			return JoinRequestAckEvent.class;
+		case JOIN_REDIRECT:
+			return JoinRedirectEvent.class;
+		case LOAD:
+			return LoadEvent.class;
+		case SALE_FINALIZED:
+			return SaleFinalizedEvent.class;
+		case SUBSCRIPTION:
+			return SubscriptionEvent.class;
+		case UNADVERTISEMENT:
+			return UnadvertisementEvent.class;
+		case UNSUBSCRIPTION:
+			return UnsubscriptionEvent.class;
+		default:
+			throw new StreamCorruptedException("Unknown event tag " + tag);
+		}
+	}
+
+	/** A growable payload buffer. */
+	private static class Output extends ByteArrayOutputStream {
+
+		private Output() {
+			super(32);
+		}
+
+		private void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		private void writeLong(long value) {
+			writeVarint((value << 1) ^ (value >> 63)); // zigzag
+		}
+
+		private void writeFloat(float value) {
+			int bits = Float.floatToRawIntBits(value);
+			write(bits >>> 24);
+			write(bits >>> 16);
+			write(bits >>> 8);
+			write(bits);
+		}
+
+		private void writeString(String value) {
+			if (value == null) {
+				writeVarint(0);
+				return;
+			}
+
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length + 1L);
+			write(bytes, 0, bytes.length);
+		}
+
+		private void writeStrings(Set<String> values) {
+			if (values == null) {
+				writeVarint(0);
+				return;
+			}
+
+			writeVarint(values.size() + 1L);
+			for (String value : values)
+				writeString(value);
+		}
+	}
+
+	/** A cursor over a payload. */
+	private static class Input {
+		private byte[] buffer;
+		private int position;
+		private int limit;
+
+		private Input(byte[] buffer, int position, int limit) {
+			this.buffer = buffer;
+			this.position = position;
+			this.limit = limit;
+		}
+
+		private byte readByte() throws IOException {
+			if (position >= limit)
+				throw new EOFException("Truncated frame");
+
+			return buffer[position++];
+		}
+
+		private long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+
+			throw new StreamCorruptedException("Malformed varint");
+		}
+
+		private long readLong() throws IOException {
+			long value = readVarint();
+			return (value >>> 1) ^ -(value & 1); // zigzag
+		}
+
+		private float readFloat() throws IOException {
+			int bits = (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16
+					| (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+			return Float.intBitsToFloat(bits);
+		}
+
+		private int readLength() throws IOException {
+			long length = readVarint();
+			if (length < 0 || length - 1 > limit - position)
+				throw new StreamCorruptedException("Bad length " + length);
+
+			return (int) length;
+		}
+
+		private String readString() throws IOException {
+			int length = readLength();
+			if (length == 0)
+				return null;
+
+			String value = new String(buffer, position, length - 1,
+					StandardCharsets.UTF_8);
+			position += length - 1;
+			return value;
+		}
+
+		private Set<String> readStrings() throws IOException {
+			int size = readLength();
+			if (size == 0)
+				return null;
+
+			Set<String> values = new HashSet<String>();
+			for (int i = 0; i < size - 1; i++)
+				values.add(readString());
+
+			return values;
+		}
+	}
+}
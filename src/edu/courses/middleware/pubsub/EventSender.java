@@ -0,0 +1,54 @@
+package edu.courses.middleware.pubsub;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * Defines a connection's outbound queue: Events are queued by any thread and
+ * written to the connection asynchronously (see EventWriter and Reactor).
+ * 
+ */
+public interface EventSender {
+
+	/**
+	 * Queues an Event for writing (never blocks).
+	 * 
+	 * @param event
+	 * @return false if the Event was dropped (see EventWriter).
+	 */
+	public boolean send(Event event);
+
+	/**
+	 * Queues an Event that may also be sent over other connections (never
+	 * blocks).
+	 * 
+	 * @param event
+	 * @return false if the Event was dropped (see EventWriter).
+	 */
+	public boolean send(EncodedEvent event);
+
+	/**
+	 * Stops writing (Events still queued are discarded).
+	 */
+	public void close();
+
+	/** Returns the number of queued Events. */
+	public int getDepth();
+
+	/** Returns the deepest the queue has been. */
+	public int getHighWater();
+
+	/** Returns the number of Events written. */
+	public long getWritten();
+
+	/** Returns the number of Events dropped. */
+	public long getDropped();
+
+	/**
+	 * Returns the number of batches written (the average batch size is
+	 * getWritten() / getFlushes()).
+	 */
+	public long getFlushes();
+
+	/** Returns the most Events written in one batch. */
+	public int getLargestBatch();
+}
@@ -0,0 +1,237 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * An EventWriter is the only writer of a connection's EventChannel.
+ *
+ * Any number of threads may queue Events for the connection; the EventWriter
+ * drains the queue in batches, writes each batch, and flushes the channel
+ * once per batch. Queueing never blocks: once OUTBOUND_QUEUE_CAPACITY Events
+ * are queued, best-effort Events (see EncodedEvent.isBestEffort) are dropped
+ * and counted, while all other Events may still use OUTBOUND_QUEUE_RESERVE
+ * more places. If even those run out, the connection is closed rather than
+ * kept running with its two ends out of sync.
+ *
+ * If Settings.COALESCE_WRITES is set, a batch is only flushed once
+ * COALESCE_DELAY_MICROS have passed since its first Event was taken (the
+ * channel's buffer is written out whenever it fills up in the meantime),
+ * trading a bounded delay for fewer, larger writes.
+ *
+ */
+public class EventWriter implements Runnable, EventSender {
+
+	/** The channel written to. */
+	private EventChannel channel;
+
+	/** Events waiting to be written. */
+	private BlockingQueue<EncodedEvent> queue;
+
+	/** The number of Events queued and not yet flushed. */
+	private AtomicInteger pending;
+
+	/** The deepest the queue has been. */
+	private AtomicInteger highWater;
+
+	/**
+	 * The number of Events written, and dropped because the queue was full
+	 * (or the writer closed).
+	 */
+	private AtomicLong written;
+	private AtomicLong dropped;
+
+	/** The number of flushes, and the most Events written by one flush. */
+	private AtomicLong flushes;
+	private AtomicInteger largestBatch;
+
+	private volatile boolean closed = false;
+
+	/** The thread running the writer. */
+	private volatile Thread thread = null;
+
+	public EventWriter(EventChannel channel) {
+		this.channel = channel;
+
+		queue = new ArrayBlockingQueue<EncodedEvent>(
+				Settings.OUTBOUND_QUEUE_CAPACITY
+						+ Settings.OUTBOUND_QUEUE_RESERVE);
+		pending = new AtomicInteger();
+		highWater = new AtomicInteger();
+		written = new AtomicLong();
+		dropped = new AtomicLong();
+		flushes = new AtomicLong();
+		largestBatch = new AtomicInteger();
+	}
+
+	/**
+	 * Starts the writing loop on a thread of its own (see Threads).
+	 */
+	public void start() {
+		Threads.start(this);
+	}
+
+	@Override
+	public boolean send(Event event) {
+		return send(new EncodedEvent(event));
+	}
+
+	@Override
+	public boolean send(EncodedEvent event) {
+		// (counted before it is queued, so that drain never misses it)
+		pending.incrementAndGet();
+		boolean shed = event.isBestEffort()
+				&& queue.size() >= Settings.OUTBOUND_QUEUE_CAPACITY;
+		if (closed || shed || !queue.offer(event)) {
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+
+			if (!closed && !shed)
+				overflow();
+			return false;
+		}
+
+		int depth = queue.size();
+		int high = highWater.get();
+		while (depth > high && !highWater.compareAndSet(high, depth))
+			high = highWater.get();
+
+		return true;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		Thread t = thread;
+		if (t != null)
+			t.interrupt();
+	}
+
+	/**
+	 * Gives up on the connection after an Event that must not be dropped did
+	 * not fit in the queue: closing the channel ends the connection (the
+	 * socket is closed first, so a write blocked on it fails too), and both
+	 * of its ends then let go of the link and its routing state.
+	 */
+	private void overflow() {
+		if (Settings.DEBUG_BROKER)
+			System.out.println("Outbound queue overflowed, closing the "
+					+ "connection");
+
+		close();
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Waits until every Event queued so far has been written and flushed (or
+	 * until the writer is closed).
+	 * 
+	 * @param timeout
+	 *            the longest to wait (milliseconds).
+	 * @return false if Events are still waiting to be written.
+	 * @throws InterruptedException
+	 */
+	public boolean drain(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (pending.get() > 0 && !closed) {
+			if (System.currentTimeMillis() >= deadline)
+				return false;
+
+			Thread.sleep(1);
+		}
+
+		return pending.get() <= 0;
+	}
+
+	@Override
+	public int getDepth() {
+		return queue.size();
+	}
+
+	@Override
+	public int getHighWater() {
+		return highWater.get();
+	}
+
+	@Override
+	public long getWritten() {
+		return written.get();
+	}
+
+	@Override
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	@Override
+	public long getFlushes() {
+		return flushes.get();
+	}
+
+	@Override
+	public int getLargestBatch() {
+		return largestBatch.get();
+	}
+
+	@Override
+	public void run() {
+		thread = Thread.currentThread();
+
+		while (!closed) {
+			try {
+				// wait for an event, then write whatever else is queued (or,
+				// when coalescing, whatever else arrives before the deadline)
+				EncodedEvent event = queue.take();
+				long deadline = System.nanoTime()
+						+ Settings.COALESCE_DELAY_MICROS * 1000L;
+
+				int size = 0;
+				while (true) {
+					channel.write(event);
+					size++;
+
+					if (Settings.COALESCE_WRITES) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0)
+							break;
+						event = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					} else {
+						if (size == Settings.OUTBOUND_BATCH_SIZE)
+							break;
+						event = queue.poll();
+					}
+
+					if (event == null)
+						break;
+				}
+
+				channel.flush();
+
+				written.addAndGet(size);
+				pending.addAndGet(-size);
+				flushes.incrementAndGet();
+				if (size > largestBatch.get())
+					largestBatch.set(size);
+
+			} catch (InterruptedException e) {
+				// closed
+			} catch (IOException e) {
+				if (!closed)
+					e.printStackTrace();
+				closed = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An InterestMatcher indexes the ItemTemplates subscribed to by all of a
+ * Broker's ClientHandlers and determines, in a single pass, which handlers are
+ * interested in an available Item.
+ *
+ * The matcher mirrors ItemTemplate.matches, which accepts an Item if the
+ * template's name predicate holds, or if both the attribute predicate and all
+ * of the price predicates hold. Names are resolved through an inverted index.
+ * The remaining predicates are evaluated with a counting algorithm: every
+ * satisfied attribute or price predicate increments its template's counter,
+ * and a template matches once its counter reaches the number of predicates it
+ * defines. Attributes are resolved through an inverted index and price bounds
+ * through sorted maps, so the work done grows with the number of satisfied
+ * predicates rather than with the number of subscribed templates. Names and
+ * attributes are indexed by their symbols in the Broker's SymbolTable, which
+ * are held for as long as their template is indexed.
+ *
+ */
+public class InterestMatcher {
+
+	/** An indexed template and the handlers subscribed to it. */
+	private static class Entry {
+		private ItemTemplate template;
+		private Set<ClientHandler> handlers;
+
+		/** The symbols of the template's names and attributes. */
+		private int[] names = SymbolTable.NO_SYMBOLS;
+		private int[] attributes = SymbolTable.NO_SYMBOLS;
+
+		/** The number of attribute and price predicates the template defines. */
+		private int required;
+
+		private Entry(ItemTemplate template) {
+			this.template = template;
+			this.handlers = new CopyOnWriteArraySet<ClientHandler>();
+		}
+	}
+
+	/** All indexed templates. */
+	private Map<ItemTemplate, Entry> entries;
+
+	/** Templates without names (these match every Item). */
+	private List<Entry> anyName;
+
+	/** Templates indexed by name symbol. */
+	private Map<Integer, List<Entry>> byName;
+
+	/** Templates indexed by attribute symbol. */
+	private Map<Integer, List<Entry>> byAttribute;
+
+	/** Templates with names but no attribute or price predicates. */
+	private List<Entry> unconditional;
+
+	/** Templates indexed by their (non-wildcard) price bounds. */
+	private TreeMap<Float, List<Entry>> byBidMin;
+	private TreeMap<Float, List<Entry>> byBidMax;
+	private TreeMap<Float, List<Entry>> byReserveMin;
+	private TreeMap<Float, List<Entry>> byReserveMax;
+
+	/** Encodes the names and attributes of indexed templates. */
+	private SymbolTable symbolTable;
+
+	/** Guards the indexes (many routing threads, few subscribers). */
+	private ReadWriteLock lock;
+
+	/**
+	 * @param symbolTable
+	 *            the SymbolTable of the Broker holding the matcher.
+	 */
+	public InterestMatcher(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+
+		entries = new HashMap<ItemTemplate, Entry>();
+		anyName = new ArrayList<Entry>();
+		byName = new HashMap<Integer, List<Entry>>();
+		byAttribute = new HashMap<Integer, List<Entry>>();
+		unconditional = new ArrayList<Entry>();
+		byBidMin = new TreeMap<Float, List<Entry>>();
+		byBidMax = new TreeMap<Float, List<Entry>>();
+		byReserveMin = new TreeMap<Float, List<Entry>>();
+		byReserveMax = new TreeMap<Float, List<Entry>>();
+		lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Subscribes a handler to Items matching a template.
+	 *
+	 * @param template
+	 * @param handler
+	 */
+	public void add(ItemTemplate template, ClientHandler handler) {
+		if (template == null)
+			return;
+
+		lock.writeLock().lock();
+		try {
+			Entry entry = entries.get(template);
+			if (entry == null) {
+				entry = new Entry(template);
+				entries.put(template, entry);
+				index(entry);
+			}
+
+			entry.handlers.add(handler);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Unsubscribes a handler from Items matching a template.
+	 *
+	 * @param template
+	 * @param handler
+	 */
+	public void remove(ItemTemplate template, ClientHandler handler) {
+		if (template == null)
+			return;
+
+		lock.writeLock().lock();
+		try {
+			Entry entry = entries.get(template);
+			if (entry == null)
+				return;
+
+			entry.handlers.remove(handler);
+			if (entry.handlers.isEmpty()) {
+				entries.remove(template);
+				unindex(entry);
+			}
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Unsubscribes a handler from all of its templates.
+	 *
+	 * @param handler
+	 */
+	public void removeAll(ClientHandler handler) {
+		lock.writeLock().lock();
+		try {
+			for (Entry entry : new ArrayList<Entry>(entries.values())) {
+				if (entry.handlers.remove(handler) && entry.handlers.isEmpty()) {
+					entries.remove(entry.template);
+					unindex(entry);
+				}
+			}
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the handlers subscribed to at least one template matching the
+	 * Item.
+	 *
+	 * @param item
+	 *            an available Item.
+	 * @return the set of interested handlers.
+	 */
+	public Set<ClientHandler> match(Item item) {
+		Set<ClientHandler> matched = new HashSet<ClientHandler>();
+
+		lock.readLock().lock();
+		try {
+			// no name or at least one matching name
+			collect(anyName, matched);
+			collect(byName.get(item.getNameSymbol(symbolTable)), matched);
+
+			// no attribute or price predicates at all
+			collect(unconditional, matched);
+
+			// count the satisfied attribute and price predicates
+			Map<Entry, Integer> counts = new HashMap<Entry, Integer>();
+
+			for (int a : item.getAttributeSymbols(symbolTable)) {
+				List<Entry> list = byAttribute.get(a);
+				if (list == null)
+					continue;
+
+				// the attribute predicate counts once, however many
+				// attributes intersect
+				for (Entry entry : list) {
+					if (!counts.containsKey(entry))
+						counts.put(entry, 1);
+				}
+			}
+
+			float bid = item.getBid();
+			float reserve = item.getReserve();
+			if (!Float.isNaN(bid)) {
+				count(byBidMin.headMap(key(bid), true), counts);
+				count(byBidMax.tailMap(key(bid), true), counts);
+			}
+			if (!Float.isNaN(reserve)) {
+				count(byReserveMin.headMap(key(reserve), true), counts);
+				count(byReserveMax.tailMap(key(reserve), true), counts);
+			}
+
+			for (Map.Entry<Entry, Integer> count : counts.entrySet()) {
+				if (count.getValue() == count.getKey().required)
+					matched.addAll(count.getKey().handlers);
+			}
+
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return matched;
+	}
+
+	/**
+	 * Returns the number of distinct templates indexed.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void collect(List<Entry> list, Set<ClientHandler> matched) {
+		if (list == null)
+			return;
+
+		for (Entry entry : list)
+			matched.addAll(entry.handlers);
+	}
+
+	private void count(Map<Float, List<Entry>> satisfied,
+			Map<Entry, Integer> counts) {
+		for (List<Entry> list : satisfied.values()) {
+			for (Entry entry : list) {
+				Integer count = counts.get(entry);
+				counts.put(entry, count == null ? 1 : count + 1);
+			}
+		}
+	}
+
+	private void index(Entry entry) {
+		ItemTemplate template = entry.template;
+
+		if (template.getNames().isEmpty()) {
+			// the name predicate always holds, nothing else matters
+			anyName.add(entry);
+			return;
+		}
+
+		entry.names = symbolTable.acquireAll(template.getNames());
+		for (int n : entry.names)
+			add(byName, n, entry);
+
+		entry.attributes = symbolTable.acquireAll(template.getAttributes());
+		if (entry.attributes.length > 0) {
+			entry.required++;
+			for (int a : entry.attributes)
+				add(byAttribute, a, entry);
+		}
+
+		entry.required += add(byBidMin, template.getBidMin(), entry);
+		entry.required += add(byBidMax, template.getBidMax(), entry);
+		entry.required += add(byReserveMin, template.getReserveMin(), entry);
+		entry.required += add(byReserveMax, template.getReserveMax(), entry);
+
+		if (entry.required == 0)
+			unconditional.add(entry);
+	}
+
+	private void unindex(Entry entry) {
+		ItemTemplate template = entry.template;
+
+		if (template.getNames().isEmpty()) {
+			anyName.remove(entry);
+			return;
+		}
+
+		for (int n : entry.names)
+			remove(byName, n, entry);
+
+		for (int a : entry.attributes)
+			remove(byAttribute, a, entry);
+
+		symbolTable.releaseAll(template.getNames());
+		symbolTable.releaseAll(template.getAttributes());
+
+		remove(byBidMin, key(template.getBidMin()), entry);
+		remove(byBidMax, key(template.getBidMax()), entry);
+		remove(byReserveMin, key(template.getReserveMin()), entry);
+		remove(byReserveMax, key(template.getReserveMax()), entry);
+
+		unconditional.remove(entry);
+	}
+
+	/**
+	 * Indexes a price bound.
+	 *
+	 * @return the number of predicates this bound adds to the template.
+	 */
+	private int add(TreeMap<Float, List<Entry>> index, float bound, Entry entry) {
+		if (bound == ItemTemplate.ANY_PRICE)
+			return 0;
+
+		// a NaN bound is never satisfied, so it is counted but not indexed
+		if (!Float.isNaN(bound))
+			add(index, key(bound), entry);
+
+		return 1;
+	}
+
+	private static <K> void add(Map<K, List<Entry>> index, K key, Entry entry) {
+		List<Entry> list = index.get(key);
+		if (list == null) {
+			list = new ArrayList<Entry>();
+			index.put(key, list);
+		}
+
+		list.add(entry);
+	}
+
+	private static <K> void remove(Map<K, List<Entry>> index, K key,
+			Entry entry) {
+		List<Entry> list = index.get(key);
+		if (list == null)
+			return;
+
+		list.remove(entry);
+		if (list.isEmpty())
+			index.remove(key);
+	}
+
+	/**
+	 * Normalizes a price for use as a sorted map key (Float.compareTo orders
+	 * -0.0 before 0.0, while the primitive comparisons used by
+	 * ItemTemplate.matches treat them as equal).
+	 */
+	private static Float key(float price) {
+		return price + 0.0f;
+	}
+}
@@ -32,6 +32,9 @@ public class Item implements Serializable {
 	/** The highest bidding buyer. */
 	protected long buyerId;
 
+	/** The name and attributes as last looked up (see getNameSymbol). */
+	private transient volatile Symbols symbols;
+
 	protected Item(String id, String name, Set<String> attributes,
 			float reserve, float bid, long buyerId) {
 		this.id = id;
@@ -63,6 +66,21 @@ public class Item implements Serializable {
 		return id;
 	}
 
+	/**
+	 * Returns the prefix of an Item identifier that names the Item's Seller
+	 * (e.g., "7:" for "7:3"), or null if it has none.
+	 * 
+	 * @param itemId
+	 *            an Item identifier (may be null, as received from a peer).
+	 */
+	public static String getSellerPrefix(String itemId) {
+		if (itemId == null)
+			return null;
+
+		int separator = itemId.indexOf(':');
+		return separator < 0 ? null : itemId.substring(0, separator + 1);
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -73,10 +91,60 @@ public class Item implements Serializable {
 
 	public void addAttribute(String attribute) {
 		attributes.add(attribute);
+		symbols = null;
 	}
 
 	public void addAttributes(Set<String> attributes) {
 		this.attributes.addAll(attributes);
+		symbols = null;
+	}
+
+	/**
+	 * Returns the name's symbol in a SymbolTable (NO_SYMBOL if it has none).
+	 * 
+	 * @param table
+	 */
+	public int getNameSymbol(SymbolTable table) {
+		return getSymbols(table).name;
+	}
+
+	/**
+	 * Returns the sorted symbols of those attributes that have one in a
+	 * SymbolTable. The returned set must not be modified.
+	 * 
+	 * @param table
+	 */
+	public int[] getAttributeSymbols(SymbolTable table) {
+		return getSymbols(table).attributes;
+	}
+
+	/**
+	 * Looks the name and attributes up (once per version of the table, as the
+	 * Item is usually matched against many subscriptions).
+	 */
+	private Symbols getSymbols(SymbolTable table) {
+		Symbols s = symbols;
+		if (s == null || s.table != table || s.version != table.getVersion())
+			symbols = s = new Symbols(table, name, attributes);
+
+		return s;
+	}
+
+	/** The symbols of an Item's name and attributes in a SymbolTable. */
+	private static class Symbols {
+		private final SymbolTable table;
+		private final int version;
+		private final int name;
+		private final int[] attributes;
+
+		private Symbols(SymbolTable table, String name, Set<String> attributes) {
+			this.table = table;
+			// (read first, so that symbols added meanwhile are looked up
+			// again next time)
+			this.version = table.getVersion();
+			this.name = table.lookup(name);
+			this.attributes = table.lookupAll(attributes);
+		}
 	}
 
 	public float getReserve() {
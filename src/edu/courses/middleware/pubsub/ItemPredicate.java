@@ -0,0 +1,17 @@
+package edu.courses.middleware.pubsub;
+
+/**
+ * A compiled form of an ItemTemplate's matching function (see
+ * ItemTemplate.compile).
+ * 
+ */
+public interface ItemPredicate {
+
+	/**
+	 * @param item
+	 *            the Item in question.
+	 * @return true if the Item satisfies the predicate.
+	 */
+	public boolean matches(Item item);
+
+}
@@ -0,0 +1,254 @@
+package edu.courses.middleware.pubsub;
+
+/**
+ * Builds the specialized ItemPredicates that ItemTemplates compile into.
+ * 
+ * Every predicate class performs a single kind of check, and a compiled
+ * template is composed only of the checks its template actually uses
+ * (wildcard prices and empty name/attribute sets are dropped). The classes are
+ * small and final so that the JIT can inline the checks of frequently matched
+ * templates. Names and attributes are checked by their symbols in the
+ * SymbolTable the template is compiled with.
+ * 
+ */
+public final class ItemPredicates {
+
+	/** Matches every Item. */
+	public static final ItemPredicate ANY = new ItemPredicate() {
+		@Override
+		public boolean matches(Item item) {
+			return true;
+		}
+	};
+
+	private ItemPredicates() {
+	}
+
+	/**
+	 * Compiles a template into a predicate accepting exactly the Items that
+	 * ItemTemplate.matches accepts (the template's names and attributes are
+	 * acquired from the table until release is called).
+	 * 
+	 * @param template
+	 * @param table
+	 * @return the compiled predicate.
+	 */
+	public static ItemPredicate compile(ItemTemplate template,
+			SymbolTable table) {
+		// no name: the name predicate holds for every Item
+		if (template.getNames().isEmpty())
+			return ANY;
+
+		int[] names = table.acquireAll(template.getNames());
+		int[] attributes = table.acquireAll(template.getAttributes());
+
+		ItemPredicate name = null;
+		if (names.length == 1)
+			name = new NameIs(table, names[0]);
+		else
+			name = new NameIn(table, names);
+
+		ItemPredicate rest = null;
+		if (attributes.length == 1)
+			rest = new HasAttribute(table, attributes[0]);
+		else if (attributes.length > 0)
+			rest = new HasAnyAttribute(table, attributes);
+
+		rest = and(rest, bidAtLeast(template.getBidMin()));
+		rest = and(rest, bidAtMost(template.getBidMax()));
+		rest = and(rest, reserveAtLeast(template.getReserveMin()));
+		rest = and(rest, reserveAtMost(template.getReserveMax()));
+
+		// no attribute or price predicates: they hold for every Item
+		if (rest == null)
+			return ANY;
+
+		return new Or(name, rest);
+	}
+
+	/**
+	 * Releases the symbols acquired by compiling a template.
+	 * 
+	 * @param template
+	 * @param table
+	 *            the table the template was compiled with.
+	 */
+	public static void release(ItemTemplate template, SymbolTable table) {
+		if (template.getNames().isEmpty())
+			return;
+
+		table.releaseAll(template.getNames());
+		table.releaseAll(template.getAttributes());
+	}
+
+	private static ItemPredicate and(ItemPredicate a, ItemPredicate b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+
+		return new And(a, b);
+	}
+
+	private static ItemPredicate bidAtLeast(float price) {
+		return price == ItemTemplate.ANY_PRICE ? null : new BidAtLeast(price);
+	}
+
+	private static ItemPredicate bidAtMost(float price) {
+		return price == ItemTemplate.ANY_PRICE ? null : new BidAtMost(price);
+	}
+
+	private static ItemPredicate reserveAtLeast(float price) {
+		return price == ItemTemplate.ANY_PRICE ? null : new ReserveAtLeast(
+				price);
+	}
+
+	private static ItemPredicate reserveAtMost(float price) {
+		return price == ItemTemplate.ANY_PRICE ? null : new ReserveAtMost(
+				price);
+	}
+
+	private static final class Or implements ItemPredicate {
+		private final ItemPredicate a;
+		private final ItemPredicate b;
+
+		private Or(ItemPredicate a, ItemPredicate b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return a.matches(item) || b.matches(item);
+		}
+	}
+
+	private static final class And implements ItemPredicate {
+		private final ItemPredicate a;
+		private final ItemPredicate b;
+
+		private And(ItemPredicate a, ItemPredicate b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return a.matches(item) && b.matches(item);
+		}
+	}
+
+	private static final class NameIs implements ItemPredicate {
+		private final SymbolTable table;
+		private final int name;
+
+		private NameIs(SymbolTable table, int name) {
+			this.table = table;
+			this.name = name;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return item.getNameSymbol(table) == name;
+		}
+	}
+
+	private static final class NameIn implements ItemPredicate {
+		private final SymbolTable table;
+		private final int[] names;
+
+		private NameIn(SymbolTable table, int[] names) {
+			this.table = table;
+			this.names = names;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return SymbolTable.contains(names, item.getNameSymbol(table));
+		}
+	}
+
+	private static final class HasAttribute implements ItemPredicate {
+		private final SymbolTable table;
+		private final int attribute;
+
+		private HasAttribute(SymbolTable table, int attribute) {
+			this.table = table;
+			this.attribute = attribute;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return SymbolTable.contains(item.getAttributeSymbols(table),
+					attribute);
+		}
+	}
+
+	private static final class HasAnyAttribute implements ItemPredicate {
+		private final SymbolTable table;
+		private final int[] attributes;
+
+		private HasAnyAttribute(SymbolTable table, int[] attributes) {
+			this.table = table;
+			this.attributes = attributes;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return SymbolTable.intersects(attributes,
+					item.getAttributeSymbols(table));
+		}
+	}
+
+	private static final class BidAtLeast implements ItemPredicate {
+		private final float min;
+
+		private BidAtLeast(float min) {
+			this.min = min;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return item.getBid() >= min;
+		}
+	}
+
+	private static final class BidAtMost implements ItemPredicate {
+		private final float max;
+
+		private BidAtMost(float max) {
+			this.max = max;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return item.getBid() <= max;
+		}
+	}
+
+	private static final class ReserveAtLeast implements ItemPredicate {
+		private final float min;
+
+		private ReserveAtLeast(float min) {
+			this.min = min;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return item.getReserve() >= min;
+		}
+	}
+
+	private static final class ReserveAtMost implements ItemPredicate {
+		private final float max;
+
+		private ReserveAtMost(float max) {
+			this.max = max;
+		}
+
+		@Override
+		public boolean matches(Item item) {
+			return item.getReserve() <= max;
+		}
+	}
+}
@@ -100,22 +100,6 @@ public class ItemTemplate implements Serializable {
 		this.reserveMax = reserveMax;
 	}
 
-	/**
-	 * Returns true if the intersection of sets a and b are non-empty.
-	 * 
-	 * @param a
-	 * @param b
-	 * @return
-	 */
-	private boolean containsAny(Set<String> a, Set<String> b) {
-		for (String aStr : a)
-			for (String bStr : b)
-				if (aStr.equals(bStr))
-					return true;
-
-		return false;
-	}
-
 	/**
 	 * The matching function that determines if a Buyer's interest "matches" an
 	 * available Item.
@@ -137,6 +121,132 @@ public class ItemTemplate implements Serializable {
 						&& (reserveMax == ANY_PRICE || item.getReserve() <= reserveMax)));
 	}
 
+	private static boolean containsAny(Set<String> a, Set<String> b) {
+		if (a.size() > b.size())
+			return containsAny(b, a);
+
+		for (String string : a) {
+			if (b.contains(string))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Compiles the matching function into a predicate specialized for this
+	 * template, which matches names and attributes by their symbols in a
+	 * SymbolTable. The template must not be modified afterwards, and the
+	 * symbols acquired for it must be released once the predicate is no
+	 * longer used (see ItemPredicates.release).
+	 * 
+	 * @param table
+	 * @return a predicate equivalent to matches(Item).
+	 */
+	public ItemPredicate compile(SymbolTable table) {
+		return ItemPredicates.compile(this, table);
+	}
+
+	/**
+	 * Returns true if this template matches every Item.
+	 */
+	public boolean matchesAll() {
+		return names.isEmpty()
+				|| (attributes.isEmpty() && bidMin == ANY_PRICE
+						&& bidMax == ANY_PRICE && reserveMin == ANY_PRICE
+						&& reserveMax == ANY_PRICE);
+	}
+
+	/**
+	 * The covering relation between templates: this template covers another
+	 * if every Item matched by the other template is also matched by this one.
+	 * 
+	 * The relation is conservative; it may return false for some templates
+	 * that do in fact cover one another, but never returns true for templates
+	 * that do not.
+	 * 
+	 * @param other
+	 *            a candidate covered template.
+	 * @return true if this template covers the provided template.
+	 */
+	public boolean covers(ItemTemplate other) {
+		if (matchesAll() || equals(other))
+			return true;
+
+		// the other template matches every Item, but we do not
+		if (other.names.isEmpty())
+			return false;
+
+		// every name matched by the other must be matched by name here...
+		if (!names.containsAll(other.names))
+			return false;
+
+		// ...and so must every attribute and price match
+		return (attributes.isEmpty() || (!other.attributes.isEmpty() && attributes
+				.containsAll(other.attributes)))
+				&& coversMin(bidMin, other.bidMin)
+				&& coversMax(bidMax, other.bidMax)
+				&& coversMin(reserveMin, other.reserveMin)
+				&& coversMax(reserveMax, other.reserveMax);
+	}
+
+	private static boolean coversMin(float min, float otherMin) {
+		return min == ANY_PRICE || (otherMin != ANY_PRICE && otherMin >= min);
+	}
+
+	private static boolean coversMax(float max, float otherMax) {
+		return max == ANY_PRICE || (otherMax != ANY_PRICE && otherMax <= max);
+	}
+
+	/**
+	 * Merges two templates into a single template that matches exactly the
+	 * Items matched by either of them.
+	 * 
+	 * Only templates that differ solely in their names, or solely in their
+	 * attributes, can be merged without matching additional Items.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return the merged template or null if the templates cannot be merged
+	 *         exactly.
+	 */
+	public static ItemTemplate merge(ItemTemplate a, ItemTemplate b) {
+		if (a.names.isEmpty() || b.names.isEmpty())
+			return null;
+
+		if (!samePrice(a.bidMin, b.bidMin) || !samePrice(a.bidMax, b.bidMax)
+				|| !samePrice(a.reserveMin, b.reserveMin)
+				|| !samePrice(a.reserveMax, b.reserveMax))
+			return null;
+
+		boolean sameNames = a.names.equals(b.names);
+		boolean sameAttributes = a.attributes.equals(b.attributes);
+		if (!sameNames && !sameAttributes)
+			return null;
+
+		// when only attributes differ, every attribute set must be non-empty
+		// (an empty set matches any attributes)
+		if (!sameAttributes
+				&& (a.attributes.isEmpty() || b.attributes.isEmpty()))
+			return null;
+
+		ItemTemplate merged = new ItemTemplate();
+		merged.addNames(a.names);
+		merged.addNames(b.names);
+		merged.addAttributes(a.attributes);
+		merged.addAttributes(b.attributes);
+		merged.setBidMin(a.bidMin);
+		merged.setBidMax(a.bidMax);
+		merged.setReserveMin(a.reserveMin);
+		merged.setReserveMax(a.reserveMax);
+
+		return merged;
+	}
+
+	private static boolean samePrice(float a, float b) {
+		return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -0,0 +1,204 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import edu.courses.middleware.pubsub.events.Event;
+import edu.courses.middleware.pubsub.events.JoinRedirectEvent;
+import edu.courses.middleware.pubsub.events.JoinRequestAckEvent;
+import edu.courses.middleware.pubsub.events.JoinRequestEvent;
+
+/**
+ * Joins the Broker tree on behalf of a client (Buyer, Seller, or Broker).
+ * 
+ * The join request is sent to the root Broker, which either answers it with
+ * an acknowledgement (accepted or rejected) or redirects the client towards
+ * the branch of the tree that should serve it. The client follows redirects
+ * until a Broker acknowledges the request; if the request was accepted, the
+ * connection it was acknowledged on becomes the client's connection to the
+ * Broker tree. Clients never have to accept connections of their own.
+ * 
+ */
+public class JoinHandshake {
+
+	/** The most redirects followed before giving up. */
+	private static final int MAX_REDIRECTS = 32;
+
+	private long identifier;
+	private Socket socket;
+	private EventChannel channel;
+	private boolean accepted;
+
+	private JoinHandshake(long identifier, Socket socket,
+			EventChannel channel, boolean accepted) {
+		this.identifier = identifier;
+		this.socket = socket;
+		this.channel = channel;
+		this.accepted = accepted;
+	}
+
+	/**
+	 * Requests to join the Broker tree, starting at the root Broker.
+	 * 
+	 * @param request
+	 *            the join request.
+	 * @param transport
+	 *            the Transport of the Broker tree.
+	 * @return the outcome of the request.
+	 * @throws IOException
+	 *             thrown if the Broker tree cannot be reached.
+	 */
+	public static JoinHandshake join(JoinRequestEvent request,
+			Transport transport) throws IOException {
+		return join(request, transport, transport.getRootAddress());
+	}
+
+	/**
+	 * Requests to join the Broker tree, starting at a given Broker (e.g., one
+	 * we are handed off to).
+	 * 
+	 * @param request
+	 *            the join request.
+	 * @param transport
+	 *            the Transport of the Broker tree.
+	 * @param address
+	 *            the address the Broker serves join requests on.
+	 * @return the outcome of the request.
+	 * @throws IOException
+	 *             thrown if the Broker tree cannot be reached.
+	 */
+	public static JoinHandshake join(JoinRequestEvent request,
+			Transport transport, SocketAddress address) throws IOException {
+		request.setCompression(offersCompression());
+		request.setSharedMemory(offersSharedMemory());
+
+		for (int i = 0; i < MAX_REDIRECTS; i++) {
+			Socket socket = transport.connect(address);
+			EventChannel channel = null;
+			boolean joined = false;
+			try {
+				socket.setSoTimeout(Settings.JOIN_TIMEOUT_MILLIS);
+				channel = EventChannel.open(socket);
+
+				channel.write(request);
+				channel.flush();
+
+				Event reply;
+				try {
+					reply = channel.read();
+				} catch (ClassNotFoundException e) {
+					throw new IOException(e);
+				}
+
+				if (reply instanceof JoinRequestAckEvent) {
+					JoinRequestAckEvent ack = (JoinRequestAckEvent) reply;
+					if (ack.getAccepted()) {
+						socket.setSoTimeout(0);
+						if (ack.getSharedMemoryPath() != null)
+							channel = SharedMemoryChannel.open(socket,
+									ack.getSharedMemoryPath());
+						else if (ack.getCompression())
+							channel.setCompression(new LinkCompression());
+						joined = true;
+					}
+
+					return new JoinHandshake(ack.getIdentifier(), socket,
+							channel, ack.getAccepted());
+				}
+
+				if (!(reply instanceof JoinRedirectEvent))
+					throw new IOException("Unexpected join reply " + reply);
+
+				// carry the identifier assigned by the root Broker onwards
+				JoinRedirectEvent redirect = (JoinRedirectEvent) reply;
+				request.setIdentifier(redirect.getIdentifier());
+				address = getAddress(redirect, transport);
+
+				if (Settings.DEBUG_BROKER)
+					System.out.println("Redirected to " + address);
+
+			} finally {
+				// only the connection of an accepted join is kept (a
+				// rejection, redirect, timeout, or failure closes it)
+				if (!joined)
+					close(socket, channel);
+			}
+		}
+
+		throw new IOException("Too many join redirects");
+	}
+
+	/**
+	 * Closes a connection we are done with.
+	 * 
+	 * @param socket
+	 * @param channel
+	 *            the connection's channel (null if it was never opened).
+	 */
+	private static void close(Socket socket, EventChannel channel) {
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			// already closed
+		}
+
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Returns the address a redirect sends us to.
+	 * 
+	 * @param redirect
+	 * @param transport
+	 *            the Transport of the Broker tree.
+	 */
+	public static SocketAddress getAddress(JoinRedirectEvent redirect,
+			Transport transport) {
+		if (redirect.getPath() != null)
+			return transport.getAddress(redirect.getPath());
+
+		return new InetSocketAddress(redirect.getHost(), redirect.getPort());
+	}
+
+	/**
+	 * Returns true if links should be compressed (see LinkCompression).
+	 */
+	public static boolean offersCompression() {
+		return Settings.COMPRESSION && Settings.BINARY_CODEC;
+	}
+
+	/**
+	 * Returns true if links to participants on the same machine should be
+	 * carried over shared memory (see SharedMemoryChannel).
+	 */
+	public static boolean offersSharedMemory() {
+		return Settings.SHARED_MEMORY && Settings.BINARY_CODEC;
+	}
+
+	public long getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the connection to the accepting Broker (null if the request was
+	 * rejected).
+	 */
+	public Socket getSocket() {
+		return accepted ? socket : null;
+	}
+
+	public EventChannel getChannel() {
+		return accepted ? channel : null;
+	}
+
+	public boolean getAccepted() {
+		return accepted;
+	}
+}
@@ -0,0 +1,148 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * Compresses the frames sent over a link and decompresses the frames received
+ * over it. A link compresses only if both of its participants agreed to when
+ * the link was set up (see JoinRequestEvent), and only frames of at least
+ * Settings.COMPRESSION_THRESHOLD bytes are compressed.
+ * 
+ * Keeps the link's compression ratio and the time spent (de)compressing its
+ * frames.
+ * 
+ */
+public class LinkCompression {
+
+	/** The number of bytes of the frames sent, before and after compression. */
+	private AtomicLong rawBytes;
+	private AtomicLong sentBytes;
+
+	/** The number of frames sent compressed, and received compressed. */
+	private AtomicLong compressed;
+	private AtomicLong decompressed;
+
+	/** The time spent compressing and decompressing frames (nanoseconds). */
+	private AtomicLong compressNanos;
+	private AtomicLong decompressNanos;
+
+	public LinkCompression() {
+		rawBytes = new AtomicLong();
+		sentBytes = new AtomicLong();
+		compressed = new AtomicLong();
+		decompressed = new AtomicLong();
+		compressNanos = new AtomicLong();
+		decompressNanos = new AtomicLong();
+	}
+
+	/**
+	 * Returns the frame to send for an Event (compressed if worthwhile).
+	 * 
+	 * @param event
+	 */
+	public ByteBuffer frame(EncodedEvent event) {
+		sending(event);
+		return event.getCompressedFrame();
+	}
+
+	/**
+	 * Writes the frame to send for an Event (compressed if worthwhile).
+	 * 
+	 * @param event
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(EncodedEvent event, OutputStream out)
+			throws IOException {
+		sending(event);
+		event.writeCompressedTo(out);
+	}
+
+	private void sending(EncodedEvent event) {
+		int length = event.getFrameLength();
+
+		// (only the first link to send a shared frame pays for compressing it)
+		long start = System.nanoTime();
+		int sent = event.getCompressedFrameLength();
+		compressNanos.addAndGet(System.nanoTime() - start);
+
+		rawBytes.addAndGet(length);
+		sentBytes.addAndGet(sent);
+		if (sent != length)
+			compressed.incrementAndGet();
+	}
+
+	/**
+	 * Decodes a received payload, decompressing it first if necessary.
+	 * 
+	 * @param buffer
+	 * @param offset
+	 *            the start of the payload.
+	 * @param length
+	 *            the payload length.
+	 * @return the decoded Event.
+	 * @throws IOException
+	 *             thrown if the payload is malformed.
+	 */
+	public Event decode(byte[] buffer, int offset, int length)
+			throws IOException {
+		if (!EventCodec.isCompressed(buffer, offset, length))
+			return EventCodec.decode(buffer, offset, length);
+
+		long start = System.nanoTime();
+		byte[] payload = EventCodec.decompress(buffer, offset, length);
+		decompressNanos.addAndGet(System.nanoTime() - start);
+		decompressed.incrementAndGet();
+
+		return EventCodec.decode(payload);
+	}
+
+	/**
+	 * Returns the size of the frames sent relative to their uncompressed size
+	 * (1 if nothing was sent).
+	 */
+	public double getRatio() {
+		long raw = rawBytes.get();
+		return raw == 0 ? 1 : (double) sentBytes.get() / raw;
+	}
+
+	public long getRawBytes() {
+		return rawBytes.get();
+	}
+
+	public long getSentBytes() {
+		return sentBytes.get();
+	}
+
+	public long getCompressed() {
+		return compressed.get();
+	}
+
+	public long getDecompressed() {
+		return decompressed.get();
+	}
+
+	public long getCompressNanos() {
+		return compressNanos.get();
+	}
+
+	public long getDecompressNanos() {
+		return decompressNanos.get();
+	}
+
+	@Override
+	public String toString() {
+		return "compressed " + Long.toString(getCompressed()) + " frames ("
+				+ Long.toString(getRawBytes()) + " to "
+				+ Long.toString(getSentBytes()) + " bytes, ratio "
+				+ Settings.formatter.format(getRatio()) + ", "
+				+ Long.toString(getCompressNanos() / 1000) + " us), decompressed "
+				+ Long.toString(getDecompressed()) + " frames ("
+				+ Long.toString(getDecompressNanos() / 1000) + " us)";
+	}
+}
@@ -0,0 +1,250 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer/single-consumer ring buffer of bytes held in (memory
+ * mapped) shared memory, so that the producer and consumer may be in
+ * different processes.
+ *
+ * The region starts with a header holding the consumer's position (head),
+ * the producer's position (tail), and a closed flag, each on a cache line of
+ * its own; the ring's bytes follow. Positions only ever grow and are
+ * published with release stores and read with acquire loads, so bytes
+ * written before the tail is published are visible to the consumer once it
+ * sees the new tail (and likewise for the head and the space it frees).
+ *
+ * The producer writes through the OutputStream, which publishes its bytes
+ * when flushed (or when the ring is full). The consumer reads through the
+ * InputStream, which blocks until bytes are published: it spins briefly (if
+ * there is more than one processor), yields, and then parks for increasing
+ * periods.
+ *
+ */
+public class MappedRingBuffer {
+
+	/** Header offsets (one cache line apart). */
+	private static final int HEAD = 0;
+	private static final int TAIL = 64;
+	private static final int CLOSED = 128;
+
+	/** The size of the header. */
+	public static final int HEADER_SIZE = 192;
+
+	/**
+	 * The number of times a waiting thread spins, then yields, before
+	 * parking.
+	 */
+	private static final int SPINS = Runtime.getRuntime()
+			.availableProcessors() > 1 ? 1000 : 0;
+	private static final int YIELDS = 100;
+
+	/** The longest a waiting thread parks between checks (nanoseconds). */
+	private static final long MAX_PARK_NANOS = 1000 * 1000;
+
+	/** Accesses the header's longs with acquire/release semantics. */
+	private static final VarHandle LONGS = MethodHandles
+			.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/** The region (header and ring). */
+	private ByteBuffer region;
+
+	/** The ring's bytes (positioned by the producer or consumer). */
+	private ByteBuffer ring;
+
+	private int capacity;
+
+	/** True once the local end has given up on the ring (see close). */
+	private volatile boolean closed = false;
+
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * @param region
+	 *            a direct buffer of HEADER_SIZE bytes plus a power of two
+	 *            (the ring's capacity), starting on an 8-byte boundary.
+	 */
+	public MappedRingBuffer(ByteBuffer region) {
+		this.region = region;
+
+		capacity = region.capacity() - HEADER_SIZE;
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Bad ring capacity " + capacity);
+
+		region.position(HEADER_SIZE);
+		ring = region.slice();
+		region.position(0);
+
+		in = new RingInputStream();
+		out = new RingOutputStream();
+	}
+
+	/**
+	 * Returns the stream the consumer reads from.
+	 */
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	/**
+	 * Returns the stream the producer writes to.
+	 */
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * Gives up on the ring locally (e.g., because the other end has gone):
+	 * the consumer reads what has been published and then the end of the
+	 * stream, and the producer fails.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	private boolean isClosed() {
+		return closed || (long) LONGS.getAcquire(region, CLOSED) != 0;
+	}
+
+	/**
+	 * Waits a little longer for the other end (see the class comment).
+	 *
+	 * @param waits
+	 *            the number of times we have waited so far.
+	 */
+	private static void await(int waits) {
+		if (waits < SPINS)
+			Thread.onSpinWait();
+		else if (waits < SPINS + YIELDS)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS,
+					1000L << Math.min(waits - SPINS - YIELDS, 10)));
+	}
+
+	/** The consumer's end. */
+	private class RingInputStream extends InputStream {
+
+		/** Our position, and the producer's position as last seen. */
+		private long head = (long) LONGS.getAcquire(region, HEAD);
+		private long tail = head;
+
+		private byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+
+			for (int waits = 0; tail == head; waits++) {
+				tail = (long) LONGS.getAcquire(region, TAIL);
+				if (tail != head)
+					break;
+
+				// (the producer publishes before closing)
+				if (isClosed()) {
+					tail = (long) LONGS.getAcquire(region, TAIL);
+					if (tail == head)
+						return -1;
+					break;
+				}
+
+				await(waits);
+			}
+
+			// read up to the end of the ring
+			int index = (int) head & (capacity - 1);
+			int n = (int) Math.min(Math.min(len, tail - head), capacity
+					- index);
+			ring.position(index);
+			ring.get(b, off, n);
+
+			head += n;
+			LONGS.setRelease(region, HEAD, head);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE,
+					(long) LONGS.getAcquire(region, TAIL) - head);
+		}
+
+		@Override
+		public void close() {
+			MappedRingBuffer.this.close();
+		}
+	}
+
+	/** The producer's end. */
+	private class RingOutputStream extends OutputStream {
+
+		/** Our position, and the consumer's position as last seen. */
+		private long tail = (long) LONGS.getAcquire(region, TAIL);
+		private long head = (long) LONGS.getAcquire(region, HEAD);
+
+		private byte[] single = new byte[1];
+
+		@Override
+		public void write(int b) throws IOException {
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				for (int waits = 0; tail - head == capacity; waits++) {
+					head = (long) LONGS.getAcquire(region, HEAD);
+					if (tail - head != capacity)
+						break;
+
+					if (isClosed())
+						throw new EOFException("Ring closed");
+
+					// let the consumer drain what we have written so far
+					if (waits == 0)
+						flush();
+
+					await(waits);
+				}
+
+				// write up to the end of the ring
+				int index = (int) tail & (capacity - 1);
+				int n = (int) Math.min(Math.min(len, capacity - (tail - head)),
+						capacity - index);
+				ring.position(index);
+				ring.put(b, off, n);
+
+				tail += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() {
+			LONGS.setRelease(region, TAIL, tail);
+		}
+
+		@Override
+		public void close() {
+			flush();
+			LONGS.setRelease(region, CLOSED, 1L);
+		}
+	}
+}
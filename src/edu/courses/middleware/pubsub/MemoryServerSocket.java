@@ -0,0 +1,106 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.LinkedList;
+
+/**
+ * A ServerSocket in a MemoryTransport's namespace: connections to its name
+ * are queued until accepted.
+ * 
+ */
+public class MemoryServerSocket extends ServerSocket {
+
+	private MemoryTransport transport;
+
+	private MemoryTransport.Address address;
+
+	/** Connections waiting to be accepted (guarded by this). */
+	private LinkedList<MemorySocket> pending;
+
+	private boolean closed = false;
+
+	MemoryServerSocket(MemoryTransport transport,
+			MemoryTransport.Address address) throws IOException {
+		this.transport = transport;
+		this.address = address;
+
+		pending = new LinkedList<MemorySocket>();
+	}
+
+	/**
+	 * Queues a connection to be accepted.
+	 * 
+	 * @param socket
+	 *            the accepting end of the connection.
+	 * @throws IOException
+	 *             thrown if we are closed.
+	 */
+	synchronized void offer(MemorySocket socket) throws IOException {
+		if (closed)
+			throw new ConnectException("Nothing listening on " + address);
+
+		pending.add(socket);
+		notifyAll();
+	}
+
+	@Override
+	public synchronized Socket accept() throws IOException {
+		try {
+			while (pending.isEmpty() && !closed)
+				wait();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+
+		if (closed)
+			throw new SocketException("Socket is closed");
+
+		return pending.removeFirst();
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return address;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	@Override
+	public boolean isBound() {
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		transport.unbind(this);
+
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+
+			// refuse the connections that were never accepted
+			for (MemorySocket socket : pending)
+				socket.close();
+			pending.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryServerSocket[" + address + "]";
+	}
+}
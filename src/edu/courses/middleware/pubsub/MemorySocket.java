@@ -0,0 +1,261 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+/**
+ * One end of an in-memory connection (see MemoryTransport): a pair of
+ * bounded pipes, one per direction. Like a TCP connection, a writer blocks
+ * while the pipe is full, and a reader reads the end of the stream once the
+ * other end is closed.
+ * 
+ * Only the parts of Socket used by the system are supported: the streams,
+ * the read timeout, and (half-)closing. As both ends are in the same JVM, the
+ * remote address is reported as the loopback address.
+ * 
+ */
+public class MemorySocket extends Socket {
+
+	/** The number of bytes a pipe holds before its writer blocks. */
+	private static final int PIPE_CAPACITY = 64 * 1024;
+
+	private SocketAddress localAddress;
+	private SocketAddress remoteAddress;
+
+	/** The pipes we read from and write to. */
+	private Pipe inbound;
+	private Pipe outbound;
+
+	/** The read timeout (milliseconds, 0 meaning none). */
+	private volatile int timeout = 0;
+
+	private InputStream in;
+	private OutputStream out;
+
+	private MemorySocket(SocketAddress localAddress,
+			SocketAddress remoteAddress, Pipe inbound, Pipe outbound) {
+		this.localAddress = localAddress;
+		this.remoteAddress = remoteAddress;
+		this.inbound = inbound;
+		this.outbound = outbound;
+
+		in = new PipeInputStream();
+		out = new PipeOutputStream();
+	}
+
+	/**
+	 * Creates a connection.
+	 * 
+	 * @param clientAddress
+	 * @param serverAddress
+	 * @return the connecting end, then the accepting end.
+	 */
+	static MemorySocket[] pair(SocketAddress clientAddress,
+			SocketAddress serverAddress) {
+		Pipe up = new Pipe();
+		Pipe down = new Pipe();
+
+		return new MemorySocket[] {
+				new MemorySocket(clientAddress, serverAddress, down, up),
+				new MemorySocket(serverAddress, clientAddress, up, down) };
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	@Override
+	public void setSoTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public int getSoTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		return remoteAddress;
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return localAddress;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return outbound.isClosed();
+	}
+
+	@Override
+	public void shutdownOutput() {
+		// (the other end reads what has been written, then the end of the
+		// stream)
+		outbound.close();
+	}
+
+	@Override
+	public void close() {
+		inbound.close();
+		outbound.close();
+	}
+
+	@Override
+	public String toString() {
+		return "MemorySocket[" + remoteAddress + "]";
+	}
+
+	/** Reads from the inbound pipe, waiting at most the read timeout. */
+	private class PipeInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return inbound.read(b, off, len, timeout);
+		}
+
+		@Override
+		public int available() {
+			return inbound.available();
+		}
+
+		@Override
+		public void close() {
+			MemorySocket.this.close();
+		}
+	}
+
+	/** Writes to the outbound pipe. */
+	private class PipeOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			outbound.write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			outbound.write(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			MemorySocket.this.close();
+		}
+	}
+
+	/** A bounded ring of bytes from one end to the other. */
+	private static class Pipe {
+
+		private byte[] buffer = new byte[PIPE_CAPACITY];
+
+		/** The position of the first unread byte, and the unread count. */
+		private int head = 0;
+		private int count = 0;
+
+		private boolean closed = false;
+
+		synchronized int read(byte[] b, int off, int len, int timeout)
+				throws IOException {
+			if (len == 0)
+				return 0;
+
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				while (count == 0) {
+					if (closed)
+						return -1;
+
+					if (timeout == 0) {
+						wait();
+						continue;
+					}
+
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						throw new SocketTimeoutException("Read timed out");
+					wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+
+			// read up to the end of the ring
+			int n = Math.min(Math.min(len, count), buffer.length - head);
+			System.arraycopy(buffer, head, b, off, n);
+			head = (head + n) % buffer.length;
+			count -= n;
+
+			notifyAll();
+			return n;
+		}
+
+		synchronized void write(byte[] b, int off, int len) throws IOException {
+			try {
+				while (len > 0) {
+					while (count == buffer.length && !closed)
+						wait();
+
+					if (closed)
+						throw new SocketException("Socket closed");
+
+					// write up to the end of the ring
+					int tail = (head + count) % buffer.length;
+					int n = Math.min(Math.min(len, buffer.length - count),
+							buffer.length - tail);
+					System.arraycopy(b, off, buffer, tail, n);
+					count += n;
+					off += n;
+					len -= n;
+
+					notifyAll();
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+
+		synchronized int available() {
+			return count;
+		}
+
+		synchronized boolean isClosed() {
+			return closed;
+		}
+
+		synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+	}
+}
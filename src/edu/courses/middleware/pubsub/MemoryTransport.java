@@ -0,0 +1,128 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Transport within a single JVM: listening sockets are named in the
+ * Transport's own namespace, and connections are pairs of in-memory pipes
+ * (see MemorySocket). Events are still encoded and decoded by the configured
+ * EventChannel, just as they would be over a network.
+ * 
+ * Each MemoryTransport is a separate namespace, so several Broker trees may
+ * run side by side in the same JVM (see Simulation).
+ * 
+ */
+public class MemoryTransport extends Transport {
+
+	/** The root Broker's listening name. */
+	private static final String ROOT_NAME = "root-broker";
+
+	/** The listening sockets, by name. */
+	private Map<String, MemoryServerSocket> listeners;
+
+	/** A running count of listening sockets and connections (for names). */
+	private AtomicLong listenerCount;
+	private AtomicLong connectionCount;
+
+	public MemoryTransport() {
+		listeners = new ConcurrentHashMap<String, MemoryServerSocket>();
+		listenerCount = new AtomicLong();
+		connectionCount = new AtomicLong();
+	}
+
+	@Override
+	public SocketAddress getRootAddress() {
+		return new Address(ROOT_NAME);
+	}
+
+	@Override
+	public ServerSocket listen(boolean root) throws IOException {
+		String name = root ? ROOT_NAME : "broker-"
+				+ Long.toString(listenerCount.incrementAndGet());
+
+		MemoryServerSocket serverSocket = new MemoryServerSocket(this,
+				new Address(name));
+		if (listeners.putIfAbsent(name, serverSocket) != null)
+			throw new BindException(name + " is in use");
+
+		return serverSocket;
+	}
+
+	@Override
+	public Socket connect(SocketAddress address) throws IOException {
+		MemoryServerSocket serverSocket = listeners.get(((Address) address)
+				.getName());
+		if (serverSocket == null)
+			throw new ConnectException("Nothing listening on " + address);
+
+		Address local = new Address("client-"
+				+ Long.toString(connectionCount.incrementAndGet()));
+		MemorySocket[] pair = MemorySocket.pair(local, address);
+		serverSocket.offer(pair[1]);
+		return pair[0];
+	}
+
+	@Override
+	public String getPath(SocketAddress address) {
+		if (address instanceof Address)
+			return ((Address) address).getName();
+
+		return null;
+	}
+
+	@Override
+	public SocketAddress getAddress(String path) {
+		return new Address(path);
+	}
+
+	/**
+	 * Stops reaching a listening socket by its name (once it is closed).
+	 */
+	void unbind(MemoryServerSocket serverSocket) {
+		listeners.remove(
+				((Address) serverSocket.getLocalSocketAddress()).getName(),
+				serverSocket);
+	}
+
+	/** A name in a MemoryTransport's namespace. */
+	public static class Address extends SocketAddress {
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		public Address(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Address))
+				return false;
+			return name.equals(((Address) obj).name);
+		}
+
+		@Override
+		public String toString() {
+			return "memory:" + name;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * An EventChannel that uses Java serialization (ObjectStreams).
+ * 
+ */
+public class ObjectEventChannel extends EventChannel {
+
+	private ObjectInputStream in;
+	private ObjectOutputStream out;
+
+	public ObjectEventChannel(Socket socket) throws IOException {
+		// send our stream header before waiting for the peer's
+		out = new ObjectOutputStream(new BufferedOutputStream(
+				socket.getOutputStream(), Settings.OUTPUT_BUFFER_SIZE));
+		out.flush();
+		in = new ObjectInputStream(socket.getInputStream());
+	}
+
+	@Override
+	public Event read() throws IOException, ClassNotFoundException {
+		return (Event) in.readObject();
+	}
+
+	@Override
+	public void write(Event event) throws IOException {
+		out.writeObject(event);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+		out.close();
+	}
+}
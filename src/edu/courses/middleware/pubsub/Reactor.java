@@ -0,0 +1,397 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * A Reactor serves all of a Broker's connections (children and parent) from a
+ * single thread using non-blocking I/O (used instead of a thread per
+ * connection if Settings.NIO_REACTOR is set).
+ *
+ * Connections are handed to the Reactor once their join handshake is
+ * complete. The Reactor reads EventCodec frames off every readable connection
+ * and passes each Event to the connection's ClientHandler, so routing happens
+ * on the Reactor thread. Events sent to a connection are encoded and queued
+ * by the sending thread, and written by the Reactor whenever the connection
+ * is writable.
+ *
+ */
+public class Reactor extends Thread {
+
+	/** The initial size of each connection's read buffer. */
+	private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+	/** The most queued frames written by a single (gathering) write. */
+	private static final int MAX_GATHER = 64;
+
+	private Selector selector;
+
+	/** Connections to be registered, or that have queued frames to write. */
+	private Queue<Connection> pending;
+
+	public Reactor() throws IOException {
+		super("Reactor");
+
+		selector = Selector.open();
+		pending = new ConcurrentLinkedQueue<Connection>();
+	}
+
+	/**
+	 * Hands a connection over to the Reactor.
+	 *
+	 * @param handler
+	 *            the connection's handler.
+	 * @param channel
+	 *            the connection's (connected, blocking) channel.
+	 * @param compression
+	 *            compresses the connection's frames (null if the link does
+	 *            not compress).
+	 * @return the connection's outbound queue.
+	 */
+	public EventSender register(ClientHandler handler, SocketChannel channel,
+			LinkCompression compression) {
+		Connection connection = new Connection(handler, channel, compression);
+		schedule(connection);
+		return connection;
+	}
+
+	private void schedule(Connection connection) {
+		pending.add(connection);
+		if (Thread.currentThread() != this)
+			selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				processPending();
+
+				if (pending.isEmpty())
+					selector.select();
+				else
+					selector.selectNow();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					Connection connection = (Connection) key.attachment();
+					if (key.isValid() && key.isReadable())
+						read(connection);
+					if (key.isValid() && key.isWritable())
+						write(connection);
+				}
+
+			} catch (IOException e) {
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				// (keep serving every other connection)
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void processPending() {
+		Connection connection;
+		while ((connection = pending.poll()) != null) {
+			if (connection.overflowed.get())
+				close(connection);
+			if (connection.closed.get())
+				continue;
+
+			if (connection.key == null) {
+				try {
+					connection.channel.configureBlocking(false);
+					connection.key = connection.channel.register(selector,
+							SelectionKey.OP_READ, connection);
+				} catch (IOException e) {
+					e.printStackTrace();
+					close(connection);
+					continue;
+				}
+
+				connection.handler.advertisePublications();
+			}
+
+			write(connection);
+		}
+	}
+
+	private void read(Connection connection) {
+		try {
+			int n = connection.channel.read(connection.input);
+			if (n < 0) {
+				close(connection);
+				return;
+			}
+
+			// decode all complete frames
+			ByteBuffer input = connection.input;
+			input.flip();
+			while (true) {
+				int start = input.position();
+				int length = readLength(input);
+				if (length < 0 || input.remaining() < length) {
+					input.position(start);
+					break;
+				}
+
+				int offset = input.arrayOffset() + input.position();
+				Event event = connection.compression != null ? connection.compression
+						.decode(input.array(), offset, length) : EventCodec
+						.decode(input.array(), offset, length);
+				input.position(input.position() + length);
+
+				connection.handler.handle(event);
+				if (connection.closed.get())
+					return;
+			}
+			input.compact();
+
+			// make room for a large frame
+			if (!input.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+				input.flip();
+				larger.put(input);
+				connection.input = larger;
+			}
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			close(connection);
+		} catch (RuntimeException e) {
+			// a peer's Event we failed to handle only costs the peer its link
+			e.printStackTrace();
+			close(connection);
+		}
+	}
+
+	/**
+	 * Reads a frame's length prefix.
+	 *
+	 * @return the length, or -1 if the prefix is incomplete.
+	 */
+	private static int readLength(ByteBuffer input) throws IOException {
+		int length = 0;
+		for (int shift = 0; input.hasRemaining(); shift += 7) {
+			if (shift > 28)
+				throw new IOException("Malformed frame length");
+
+			int b = input.get();
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (length < 0 || length > EventCodec.MAX_FRAME_SIZE)
+					throw new IOException("Frame too large: " + length);
+				return length;
+			}
+		}
+
+		return -1;
+	}
+
+	private void write(Connection connection) {
+		SelectionKey key = connection.key;
+		if (key == null || !key.isValid())
+			return;
+
+		try {
+			ByteBuffer[] frames = new ByteBuffer[MAX_GATHER];
+			while (true) {
+				// gather the queued frames
+				int count = 0;
+				for (ByteBuffer frame : connection.output) {
+					frames[count++] = frame;
+					if (count == MAX_GATHER)
+						break;
+				}
+
+				if (count == 0)
+					break;
+
+				connection.channel.write(frames, 0, count);
+
+				int batch = 0;
+				for (int i = 0; i < count; i++) {
+					if (frames[i].hasRemaining())
+						break;
+
+					connection.output.poll();
+					connection.depth.decrementAndGet();
+					batch++;
+				}
+
+				connection.written.addAndGet(batch);
+				connection.flushes.incrementAndGet();
+				if (batch > connection.largestBatch.get())
+					connection.largestBatch.set(batch);
+
+				if (frames[count - 1].hasRemaining()) {
+					// the socket is full, wait until it is writable
+					key.interestOps(SelectionKey.OP_READ
+							| SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+
+			key.interestOps(SelectionKey.OP_READ);
+
+			// catch frames queued while we were writing
+			connection.scheduled.set(false);
+			if (!connection.output.isEmpty()
+					&& connection.scheduled.compareAndSet(false, true))
+				pending.add(connection);
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			close(connection);
+		}
+	}
+
+	private void close(Connection connection) {
+		if (!connection.closed.compareAndSet(false, true))
+			return;
+
+		if (connection.key != null)
+			connection.key.cancel();
+
+		connection.handler.close();
+	}
+
+	/** A connection served by the Reactor. */
+	private class Connection implements EventSender {
+		private ClientHandler handler;
+		private SocketChannel channel;
+		private SelectionKey key = null;
+
+		/** Compresses the connection's frames (may be null). */
+		private LinkCompression compression;
+
+		/** Bytes read but not yet decoded. */
+		private ByteBuffer input;
+
+		/** Frames waiting to be written. */
+		private Queue<ByteBuffer> output;
+
+		/** True while the connection is pending (see schedule). */
+		private AtomicBoolean scheduled;
+
+		private AtomicBoolean closed;
+
+		/** Set once an Event that must not be dropped did not fit. */
+		private AtomicBoolean overflowed;
+
+		private AtomicInteger depth;
+		private AtomicInteger highWater;
+		private AtomicLong written;
+		private AtomicLong dropped;
+		private AtomicLong flushes;
+		private AtomicInteger largestBatch;
+
+		private Connection(ClientHandler handler, SocketChannel channel,
+				LinkCompression compression) {
+			this.handler = handler;
+			this.channel = channel;
+			this.compression = compression;
+
+			input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			output = new ConcurrentLinkedQueue<ByteBuffer>();
+			scheduled = new AtomicBoolean(true);
+			closed = new AtomicBoolean(false);
+			overflowed = new AtomicBoolean(false);
+			depth = new AtomicInteger();
+			highWater = new AtomicInteger();
+			written = new AtomicLong();
+			dropped = new AtomicLong();
+			flushes = new AtomicLong();
+			largestBatch = new AtomicInteger();
+		}
+
+		@Override
+		public boolean send(Event event) {
+			return send(new EncodedEvent(event));
+		}
+
+		@Override
+		public boolean send(EncodedEvent event) {
+			// (best-effort Events are dropped once the queue is full, all
+			// others may use the reserve beyond it; see EventWriter)
+			int queued = depth.incrementAndGet();
+			int limit = event.isBestEffort() ? Settings.OUTBOUND_QUEUE_CAPACITY
+					: Settings.OUTBOUND_QUEUE_CAPACITY
+							+ Settings.OUTBOUND_QUEUE_RESERVE;
+			if (closed.get() || overflowed.get() || queued > limit) {
+				depth.decrementAndGet();
+				dropped.incrementAndGet();
+
+				// give up on the connection rather than let its two ends
+				// get out of sync (it is closed by the Reactor thread)
+				if (!event.isBestEffort() && !closed.get()
+						&& overflowed.compareAndSet(false, true))
+					schedule(this);
+				return false;
+			}
+
+			int high = highWater.get();
+			while (queued > high && !highWater.compareAndSet(high, queued))
+				high = highWater.get();
+
+			// (the frame is shared by every connection the event is sent to)
+			output.add(compression != null ? compression.frame(event) : event
+					.getFrame());
+
+			if (scheduled.compareAndSet(false, true))
+				schedule(this);
+
+			return true;
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true) && key != null)
+				key.cancel();
+		}
+
+		@Override
+		public int getDepth() {
+			return depth.get();
+		}
+
+		@Override
+		public int getHighWater() {
+			return highWater.get();
+		}
+
+		@Override
+		public long getWritten() {
+			return written.get();
+		}
+
+		@Override
+		public long getDropped() {
+			return dropped.get();
+		}
+
+		@Override
+		public long getFlushes() {
+			return flushes.get();
+		}
+
+		@Override
+		public int getLargestBatch() {
+			return largestBatch.get();
+		}
+	}
+}
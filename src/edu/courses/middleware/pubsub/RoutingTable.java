@@ -0,0 +1,111 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.courses.middleware.pubsub.events.Event;
+
+/**
+ * A RoutingTable keeps track of which of a Broker's ClientHandlers hold each
+ * subscription (or advertisement).
+ *
+ * A Broker only has to tell the rest of the Broker tree about a subscription
+ * when its first reference is added or its last reference is removed. A
+ * particular link only has to be told when the first reference outside of
+ * that link is added or the last one is removed.
+ *
+ */
+public class RoutingTable {
+
+	/** The handlers holding each entry. */
+	private Map<Event, Set<ClientHandler>> holders;
+
+	public RoutingTable() {
+		holders = new HashMap<Event, Set<ClientHandler>>();
+	}
+
+	/**
+	 * Adds a handler's reference to an entry.
+	 *
+	 * @param event
+	 *            the subscription or advertisement.
+	 * @param handler
+	 *            the holding handler.
+	 * @return true if the handler did not already hold the entry.
+	 */
+	public synchronized boolean add(Event event, ClientHandler handler) {
+		Set<ClientHandler> set = holders.get(event);
+		if (set == null) {
+			set = new HashSet<ClientHandler>();
+			holders.put(event, set);
+		}
+
+		return set.add(handler);
+	}
+
+	/**
+	 * Removes a handler's reference to an entry.
+	 *
+	 * @param event
+	 *            the subscription or advertisement.
+	 * @param handler
+	 *            the holding handler.
+	 * @return true if the handler held the entry.
+	 */
+	public synchronized boolean remove(Event event, ClientHandler handler) {
+		Set<ClientHandler> set = holders.get(event);
+		if (set == null || !set.remove(handler))
+			return false;
+
+		if (set.isEmpty())
+			holders.remove(event);
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of handlers holding an entry.
+	 *
+	 * @param event
+	 *            the subscription or advertisement.
+	 */
+	public synchronized int getReferences(Event event) {
+		Set<ClientHandler> set = holders.get(event);
+		return set == null ? 0 : set.size();
+	}
+
+	/**
+	 * Returns the number of handlers, other than the excluded one, holding an
+	 * entry.
+	 *
+	 * @param event
+	 *            the subscription or advertisement.
+	 * @param excluded
+	 *            the handler not to count.
+	 */
+	public synchronized int getReferences(Event event, ClientHandler excluded) {
+		Set<ClientHandler> set = holders.get(event);
+		if (set == null)
+			return 0;
+
+		return set.contains(excluded) ? set.size() - 1 : set.size();
+	}
+
+	/**
+	 * Returns a snapshot of the entries in the table.
+	 */
+	public synchronized List<Event> getEntries() {
+		return new ArrayList<Event>(holders.keySet());
+	}
+
+	/**
+	 * Returns the number of distinct entries in the table.
+	 */
+	public synchronized int size() {
+		return holders.size();
+	}
+}
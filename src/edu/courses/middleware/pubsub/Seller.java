@@ -20,6 +20,9 @@ import edu.courses.middleware.pubsub.ui.SellerUIHandlerDelegate;
  * listed items. However, the user is only notified when a listed Item receives
  * a new high bid.
  * 
+ * An embedded Seller (see Configuration) has no command line interface and
+ * is controlled by its program instead (see Simulation).
+ * 
  */
 public class Seller implements SellerServerHandlerDelegate,
 		SellerUIHandlerDelegate {
@@ -30,8 +33,11 @@ public class Seller implements SellerServerHandlerDelegate,
 	/** Manages the network connection to the Broker tree. */
 	private SellerServerHandler serverHandler;
 
-	/** Manages the user interface thread. */
-	private SellerUIHandler uiHandler;
+	/** Manages the user interface thread (null if we are embedded). */
+	private SellerUIHandler uiHandler = null;
+
+	/** Our configuration (e.g., the Transport of our Broker tree). */
+	private Configuration configuration;
 
 	/**
 	 * The a running count of the number of listed Items (used for generating
@@ -46,16 +52,26 @@ public class Seller implements SellerServerHandlerDelegate,
 	private Map<String, Item> itemsSold;
 
 	public Seller() {
+		this(new Configuration());
+	}
+
+	public Seller(Configuration configuration) {
+		this.configuration = configuration;
+
 		// configure the system's decimal formatter if necessary
 		// Settings.formatter.setMaximumFractionDigits(2);
 
 		identifier = System.currentTimeMillis();
 		serverHandler = new SellerServerHandler(this);
-		uiHandler = new SellerUIHandler(this);
+		if (!configuration.isEmbedded())
+			uiHandler = new SellerUIHandler(this);
 
 		itemCount = 0;
 		itemsAvailable = new ConcurrentHashMap<String, Item>();
 		itemsSold = new ConcurrentHashMap<String, Item>();
+
+		// join the Broker tree
+		serverHandler.connect(configuration.getTransport());
 	}
 
 	/**
@@ -138,6 +154,14 @@ public class Seller implements SellerServerHandlerDelegate,
 		publishSaleFinalized(item);
 	}
 
+	/**
+	 * Returns true once we have joined the Broker tree (an embedded Seller
+	 * whose join request was rejected is left unconnected).
+	 */
+	public boolean isConnected() {
+		return serverHandler.isConnected();
+	}
+
 	/* SellerServerHandlerDelegate Interface Implementation */
 
 	@Override
@@ -147,13 +171,15 @@ public class Seller implements SellerServerHandlerDelegate,
 		
 		// now we can start interacting with our sever and user
 		serverHandler.start();
-		uiHandler.start();
+		if (uiHandler != null)
+			uiHandler.start();
 	}
 
 	@Override
 	public void close(ServerHandler handler) {
 		System.out.println("Closing Seller.");
-		System.exit(0);
+		if (!configuration.isEmbedded())
+			System.exit(0);
 	}
 
 	@Override
@@ -175,7 +201,8 @@ public class Seller implements SellerServerHandlerDelegate,
 		item.setBuyerId(event.getBuyerId()); // keep track of the highest bidder
 
 		// alert the user
-		uiHandler.deliver(event);
+		if (uiHandler != null)
+			uiHandler.deliver(event);
 
 		// announce the new bid price
 		publishBidUpdate(item);
@@ -1,10 +1,14 @@
 package edu.courses.middleware.pubsub;
 
+import java.net.Socket;
+
+import edu.courses.middleware.pubsub.events.AdvertisementEvent;
 import edu.courses.middleware.pubsub.events.AvailableItemEvent;
 import edu.courses.middleware.pubsub.events.BidEvent;
 import edu.courses.middleware.pubsub.events.BidUpdateEvent;
 import edu.courses.middleware.pubsub.events.Event;
 import edu.courses.middleware.pubsub.events.SaleFinalizedEvent;
+import edu.courses.middleware.pubsub.events.SubscriptionEvent;
 
 /**
  * A ClientHandler used by Brokers specifically for Seller clients.
@@ -12,9 +16,19 @@ import edu.courses.middleware.pubsub.events.SaleFinalizedEvent;
  */
 public class SellerClientHandler extends ClientHandler {
 
-	public SellerClientHandler(long identifier, int port, boolean ack,
-			ClientHandlerDelegate delegate) {
-		super(identifier, port, ack, delegate);
+	public SellerClientHandler(long identifier, Socket socket,
+			EventChannel channel, ClientHandlerDelegate delegate) {
+		super(identifier, socket, channel, delegate);
+	}
+
+	@Override
+	protected void advertisePublications() {
+		// Sellers publish about their own Items, whose identifiers are
+		// prefixed by the Seller's identifier (see Item)
+		String itemPrefix = Long.toString(identifier) + ":";
+		advertise(new AdvertisementEvent(AvailableItemEvent.class, itemPrefix));
+		advertise(new AdvertisementEvent(BidUpdateEvent.class, itemPrefix));
+		advertise(new AdvertisementEvent(SaleFinalizedEvent.class, itemPrefix));
 	}
 
 	@Override
@@ -28,6 +42,9 @@ public class SellerClientHandler extends ClientHandler {
 		} else if (event instanceof SaleFinalizedEvent) {
 			receivedSaleFinalized((SaleFinalizedEvent) event);
 
+		} else if (event instanceof SubscriptionEvent) {
+			receivedSubscription((SubscriptionEvent) event);
+
 		} else {
 			// ignore
 		}
@@ -46,4 +63,10 @@ public class SellerClientHandler extends ClientHandler {
 		// unsubscribe from bids on this item
 		unsubscribe(new BidEvent(event.getItemId()));
 	}
+
+	private void receivedSubscription(SubscriptionEvent event) {
+		// restore a subscription held for the client by the Broker it was
+		// handed off from (see ServerHandler)
+		subscribe(event.getSubscription());
+	}
 }
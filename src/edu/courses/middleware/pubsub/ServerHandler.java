@@ -1,14 +1,17 @@
 package edu.courses.middleware.pubsub;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import edu.courses.middleware.pubsub.events.Event;
+import edu.courses.middleware.pubsub.events.JoinRedirectEvent;
 import edu.courses.middleware.pubsub.events.JoinRequestEvent;
 import edu.courses.middleware.pubsub.events.JoinRequestEvent.ClientType;
+import edu.courses.middleware.pubsub.events.SubscriptionEvent;
 
 /**
  * ServerHandlers are used by Buyer and Seller clients to send/receive Events
@@ -18,35 +21,61 @@ import edu.courses.middleware.pubsub.events.JoinRequestEvent.ClientType;
  * details and simply enables a client to send Events and be notified when
  * Events are received.
  * 
+ * If our Broker's room for clients shrinks, it may hand us off to another
+ * Broker: it sends us the subscriptions it holds for us and then redirects us
+ * (see Broker). We join the new Broker, restore our subscriptions there, and only
+ * then leave the old Broker (which closes the old connection once we stop
+ * writing to it), so that no Events are missed in between (some may be
+ * received twice).
+ * 
  * This class should be extended for use by specific types of clients.
  * 
  */
-public abstract class ServerHandler extends Thread implements
-		ServerListenerDelegate {
+public abstract class ServerHandler implements Runnable {
+
+	/** Our unique identifier (assigned when we join the Broker tree). */
+	protected long identifier = -1L;
+
+	/** The Transport of the Broker tree. */
+	protected Transport transport = null;
+
+	protected volatile Socket socket = null;
+	protected volatile EventChannel channel = null;
+
+	/**
+	 * The subscriptions our Broker holds for us, received ahead of a handoff.
+	 */
+	private List<Event> handoffSubscriptions;
 
-	protected ServerListener serverListener = null;
-	protected Socket socket = null;
-	protected ObjectInputStream in = null;
-	protected ObjectOutputStream out = null;
+	/** Writes queued events to the channel. */
+	protected volatile EventWriter writer = null;
 
 	protected ServerHandlerDelegate delegate;
 
 	public ServerHandler(ServerHandlerDelegate delegate) {
-		super();
+		this.delegate = delegate;
 
-		try {
-			this.delegate = delegate;
-
-			serverListener = new ServerListener(this);
-			serverListener.start();
+		handoffSubscriptions = new CopyOnWriteArrayList<Event>();
+	}
 
-			socket = new Socket("localhost", Broker.ROOT_BROKER_PORT);
-			out = new ObjectOutputStream(socket.getOutputStream());
+	/**
+	 * Joins the Broker tree (see JoinHandshake) and notifies the delegate once
+	 * connected.
+	 * 
+	 * @param transport
+	 *            the Transport of the Broker tree.
+	 */
+	public void connect(Transport transport) {
+		this.transport = transport;
 
+		try {
 			// connect to the Broker tree
 			System.out.print("Connecting to the Broker network...");
-			sendEvent(new JoinRequestEvent(serverListener.getPort(),
-					getClientType()));
+			JoinHandshake join = JoinHandshake.join(new JoinRequestEvent(0,
+					getClientType()), transport);
+
+			connected(join.getIdentifier(), join.getSocket(),
+					join.getChannel(), join.getAccepted());
 
 		} catch (UnknownHostException e) {
 			e.printStackTrace();
@@ -55,6 +84,13 @@ public abstract class ServerHandler extends Thread implements
 		}
 	}
 
+	/**
+	 * Starts the event loop on a thread of its own (see Threads).
+	 */
+	public void start() {
+		Threads.start(this);
+	}
+
 	/**
 	 * Returns an identifier indicating the type of client we are.
 	 * 
@@ -70,42 +106,172 @@ public abstract class ServerHandler extends Thread implements
 	public abstract void process(Event event);
 
 	/**
-	 * Sends an event object to the server via the socket's output stream.
+	 * Queues an event object to be sent to the server via the socket's event
+	 * channel (never blocks).
 	 * 
 	 * @param event
 	 */
 	public void sendEvent(Event event) {
-		try {
-			out.writeObject(event);
-			out.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		writer.send(event);
+	}
+
+	/**
+	 * Returns true once we have joined the Broker tree.
+	 */
+	public boolean isConnected() {
+		return writer != null;
+	}
+
+	/**
+	 * Returns the writer of the outbound queue (e.g., for its queue depth
+	 * metrics).
+	 */
+	public EventWriter getWriter() {
+		return writer;
 	}
 
 	@Override
 	public void run() {
+		read(socket, channel);
+	}
+
+	/**
+	 * Reads and processes events from a connection until it is closed.
+	 * 
+	 * @param socket
+	 * @param channel
+	 *            the connection's event channel.
+	 */
+	private void read(Socket socket, EventChannel channel) {
 		while (true) {
 			try {
-				Event event = (Event) in.readObject();
-				process(event);
+				Event event = channel.read();
+
+				if (event instanceof SubscriptionEvent)
+					handoffSubscriptions.add(event);
+				else if (event instanceof JoinRedirectEvent)
+					startHandoff((JoinRedirectEvent) event);
+				else
+					process(event);
 
 			} catch (IOException e) {
+				// the Broker we have been handed off from let us go
+				if (channel != this.channel) {
+					closeQuietly(socket, channel);
+					return;
+				}
+
 				e.printStackTrace();
 				close();
+				return;
 			} catch (ClassNotFoundException e) {
 				e.printStackTrace();
 				close();
+				return;
 			}
 		}
 	}
 
+	/**
+	 * Starts moving to the Broker we are redirected to, off of the reading
+	 * thread (we keep reading from our current Broker until we have moved).
+	 */
+	private void startHandoff(final JoinRedirectEvent redirect) {
+		final List<Event> subscriptions = new ArrayList<Event>(
+				handoffSubscriptions);
+		handoffSubscriptions.clear();
+
+		Threads.start(new Runnable() {
+			@Override
+			public void run() {
+				handOff(redirect, subscriptions);
+			}
+		});
+	}
+
+	/**
+	 * Moves to the Broker we are redirected to.
+	 * 
+	 * @param redirect
+	 *            the redirect sent by our current Broker.
+	 * @param subscriptions
+	 *            the subscriptions to restore at the new Broker.
+	 */
+	private void handOff(JoinRedirectEvent redirect, List<Event> subscriptions) {
+		Socket oldSocket = socket;
+		EventWriter oldWriter = writer;
+
+		try {
+			JoinRequestEvent request = new JoinRequestEvent(0, getClientType());
+			request.setIdentifier(identifier);
+
+			JoinHandshake join = JoinHandshake.join(request, transport,
+					JoinHandshake.getAddress(redirect, transport));
+			if (!join.getAccepted()) {
+				System.err.println("Could not be handed off to "
+						+ JoinHandshake.getAddress(redirect, transport)
+						+ " (staying with the current Broker).");
+				return;
+			}
+
+			// restore our subscriptions before anything else is sent, and
+			// only start sending once what was queued for the old Broker has
+			// been written
+			EventWriter newWriter = new EventWriter(join.getChannel());
+			for (Event subscription : subscriptions)
+				newWriter.send(subscription);
+
+			socket = join.getSocket();
+			channel = join.getChannel();
+			writer = newWriter;
+
+			oldWriter.drain(Settings.JOIN_TIMEOUT_MILLIS);
+			newWriter.start();
+
+			final Socket newSocket = socket;
+			final EventChannel newChannel = channel;
+			Threads.start(new Runnable() {
+				@Override
+				public void run() {
+					read(newSocket, newChannel);
+				}
+			});
+
+			if (Settings.DEBUG_BROKER)
+				System.out.println("Participant-#" + Long.toString(identifier)
+						+ " handed off to "
+						+ JoinHandshake.getAddress(redirect, transport));
+
+			// give our subscriptions time to reach the old Broker through
+			// the new one before leaving it (we keep reading until it closes
+			// the old connection)
+			Thread.sleep(Settings.HANDOFF_OVERLAP_MILLIS);
+
+			oldWriter.close();
+			oldSocket.shutdownOutput();
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void closeQuietly(Socket socket, EventChannel channel) {
+		try {
+			channel.close();
+			socket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
 	private void close() {
 		System.out.println("Closing client");
 
 		try {
-			in.close();
-			out.close();
+			writer.close();
+			channel.close();
 			socket.close();
 			delegate.close(this);
 		} catch (IOException e) {
@@ -114,31 +280,21 @@ public abstract class ServerHandler extends Thread implements
 
 	}
 
-	/* ServerListenerDelegate Interface Implementation */
-
-	@Override
-	public void connected(long identifier, Socket socket, ObjectInputStream in,
-			ObjectOutputStream out, boolean accepted) {
+	private void connected(long identifier, Socket socket,
+			EventChannel channel, boolean accepted) {
 		if (!accepted) {
 			System.out.println("connection request rejected.");
 			System.out.println("(The Broker tree is at capacity "
 					+ "and cannot serve any more clients. Try again later.)");
-			close();
+			delegate.close(this);
 			return;
 		}
 
-		try {
-			// close connection to the root Broker
-			this.out.close();
-			this.socket.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-
+		this.identifier = identifier;
 		this.socket = socket;
-		this.in = in;
-		this.out = out;
+		this.channel = channel;
+		writer = new EventWriter(channel);
+		writer.start();
 
 		delegate.connected(identifier, this);
 
@@ -13,6 +13,121 @@ public class Settings {
 	public static final boolean DEBUG_BUYER = true;
 	public static final boolean DEBUG_SELLER = true;
 	
+	/**
+	 * Subscription forwarding settings (merge InterestEvents forwarded towards
+	 * the root when it can be done exactly).
+	 */
+	public static final boolean MERGE_SUBSCRIPTIONS = true;
+	
+	/**
+	 * The number of counters in each ClientHandler's subscription summary
+	 * (see SubscriptionTable).
+	 */
+	public static final int SUBSCRIPTION_SUMMARY_SIZE = 1 << 14;
+	
+	/**
+	 * Event routing settings (match and dispatch each Event across a Broker's
+	 * links in parallel, and split subscription tables larger than the
+	 * partition size into partitions matched in parallel).
+	 */
+	public static final boolean PARALLEL_FAN_OUT = false;
+	public static final int MATCH_PARTITION_SIZE = 256;
+	
+	/**
+	 * Outbound queue settings (the number of Events queued per connection
+	 * before best-effort Events are dropped, the further room kept for all
+	 * other Events, beyond which the connection is closed, and the most Events
+	 * written per flush; see EventWriter).
+	 */
+	public static final int OUTBOUND_QUEUE_CAPACITY = 4096;
+	public static final int OUTBOUND_QUEUE_RESERVE = 4096;
+	public static final int OUTBOUND_BATCH_SIZE = 64;
+	
+	/**
+	 * Write coalescing settings (hold outbound Events in the connection's
+	 * output buffer, which holds OUTPUT_BUFFER_SIZE bytes, for up to
+	 * COALESCE_DELAY_MICROS before flushing them; see EventWriter).
+	 */
+	public static final boolean COALESCE_WRITES = false;
+	public static final long COALESCE_DELAY_MICROS = 250;
+	public static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+	
+	/**
+	 * Wire format settings (encode Events with the binary EventCodec instead
+	 * of Java serialization; must be the same for all participants).
+	 */
+	public static final boolean BINARY_CODEC = false;
+	
+	/**
+	 * Broker I/O settings (serve all of a Broker's connections from a single
+	 * non-blocking Reactor thread instead of a thread per connection;
+	 * requires BINARY_CODEC).
+	 */
+	public static final boolean NIO_REACTOR = false;
+	
+	/**
+	 * Threading settings (run connection, listener, and command line loops on
+	 * virtual threads when the JVM supports them; see Threads).
+	 */
+	public static final boolean VIRTUAL_THREADS = false;
+	
+	/**
+	 * Compression settings (offer to compress each link at join time, and
+	 * only compress frames of at least COMPRESSION_THRESHOLD bytes on links
+	 * whose participants agree to; requires BINARY_CODEC).
+	 */
+	public static final boolean COMPRESSION = false;
+	public static final int COMPRESSION_THRESHOLD = 256;
+	
+	/**
+	 * Shared memory settings (offer to carry each link between participants
+	 * on the same machine over a pair of memory-mapped ring buffers of
+	 * SHARED_MEMORY_RING_SIZE bytes, a power of two, instead of TCP; requires
+	 * BINARY_CODEC).
+	 */
+	public static final boolean SHARED_MEMORY = false;
+	public static final int SHARED_MEMORY_RING_SIZE = 1 << 20;
+	
+	/**
+	 * Transport settings (listen and connect over Unix domain sockets instead
+	 * of TCP loopback; must be the same for all participants).
+	 */
+	public static final boolean UNIX_DOMAIN_SOCKETS = false;
+	
+	/**
+	 * Join admission settings (the number of join requests a Broker serves at
+	 * once, and how long a joining client may take to send its request or a
+	 * Broker to answer it).
+	 */
+	public static final int JOIN_ADMISSION_THREADS = 8;
+	public static final int JOIN_TIMEOUT_MILLIS = 5000;
+	
+	/**
+	 * Broker tree growth settings (start a new Broker to make room for
+	 * clients joining a full Broker tree, and how long a client handed off to
+	 * a new Broker keeps its old connection once it has moved; see Broker).
+	 */
+	public static final boolean BROKER_TREE_GROWTH = true;
+	public static final long HANDOFF_OVERLAP_MILLIS = 1000;
+	
+	/**
+	 * Broker fan-out settings (the default maximum numbers of child Brokers
+	 * and of clients each Broker accepts; see Configuration).
+	 */
+	public static final int MAX_CHILD_BROKERS = 3;
+	public static final int MAX_CLIENTS = 3;
+	
+	/**
+	 * Load-aware placement settings (how often Brokers report their subtree's
+	 * load to their parents, and how a branch's depth, event rate, queued
+	 * Events, and participants are weighed against each other when placing a
+	 * joining client, in Events per second; see Broker).
+	 */
+	public static final long LOAD_REPORT_MILLIS = 1000;
+	public static final double PLACEMENT_DEPTH_WEIGHT = 100;
+	public static final double PLACEMENT_QUEUE_WEIGHT = 10;
+	public static final double PLACEMENT_CONNECTION_WEIGHT = 1;
+	
 	/** Decimal formatting settings. */
 	public static DecimalFormat formatter = new DecimalFormat("###.##");
 }
@@ -0,0 +1,163 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A binary EventChannel between two participants on the same machine that
+ * carries its frames over shared memory instead of the connection's socket
+ * (used if Settings.SHARED_MEMORY is set and both participants agree to when
+ * the link is set up; see JoinRequestEvent).
+ *
+ * The accepting Broker creates a file holding two MappedRingBuffers, one per
+ * direction, and sends its path in the join acknowledgement; the client maps
+ * the same file and deletes it, as it is no longer needed once both ends
+ * have mapped it (the Broker deletes it too when the link closes, in case the
+ * client never got to map it). The socket stays open but carries nothing
+ * more: it is watched so that the channel is closed once the other end goes
+ * away.
+ *
+ */
+public class SharedMemoryChannel extends BinaryEventChannel {
+
+	/** The socket watched for the other end going away. */
+	private Socket socket;
+
+	/** The rings we read from and write to. */
+	private MappedRingBuffer inbound;
+	private MappedRingBuffer outbound;
+
+	/** The file holding the rings (only known by the accepting Broker). */
+	private String path = null;
+
+	private SharedMemoryChannel(Socket socket, MappedRingBuffer inbound,
+			MappedRingBuffer outbound) {
+		super(inbound.getInputStream(), outbound.getOutputStream());
+
+		this.socket = socket;
+		this.inbound = inbound;
+		this.outbound = outbound;
+
+		Threads.start(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		});
+	}
+
+	/**
+	 * Creates the shared memory for a link (run by the accepting Broker).
+	 *
+	 * @param socket
+	 *            the link's connection.
+	 * @return the channel; see getPath for the file to send to the client.
+	 * @throws IOException
+	 */
+	public static SharedMemoryChannel create(Socket socket) throws IOException {
+		File file = File.createTempFile("pubsub-", ".ring");
+
+		ByteBuffer[] rings;
+		try {
+			rings = map(file);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+
+		SharedMemoryChannel channel = new SharedMemoryChannel(socket,
+				new MappedRingBuffer(rings[1]), new MappedRingBuffer(rings[0]));
+		channel.path = file.getPath();
+		return channel;
+	}
+
+	/**
+	 * Opens the shared memory created for a link (run by the client).
+	 *
+	 * @param socket
+	 *            the link's connection.
+	 * @param path
+	 *            the file sent by the accepting Broker.
+	 * @return the channel.
+	 * @throws IOException
+	 */
+	public static SharedMemoryChannel open(Socket socket, String path)
+			throws IOException {
+		File file = new File(path);
+		ByteBuffer[] rings = map(file);
+		file.delete();
+
+		return new SharedMemoryChannel(socket, new MappedRingBuffer(rings[0]),
+				new MappedRingBuffer(rings[1]));
+	}
+
+	/**
+	 * Maps a file's two rings (the Broker's outbound ring first).
+	 */
+	private static ByteBuffer[] map(File file) throws IOException {
+		int size = MappedRingBuffer.HEADER_SIZE
+				+ Settings.SHARED_MEMORY_RING_SIZE;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// (the mapping outlives the file channel)
+			MappedByteBuffer region = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, 2L * size);
+
+			region.limit(size);
+			ByteBuffer first = region.slice();
+			region.limit(2 * size).position(size);
+			ByteBuffer second = region.slice();
+
+			return new ByteBuffer[] { first, second };
+		} finally {
+			raf.close();
+		}
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Waits for the other end to close its socket (or for ours to be closed),
+	 * then closes the rings.
+	 */
+	private void watch() {
+		try {
+			InputStream in = socket.getInputStream();
+			while (in.read() >= 0)
+				; // nothing more is sent over the socket
+
+		} catch (IOException e) {
+			// closed
+		}
+
+		inbound.close();
+		outbound.close();
+		deleteFile();
+	}
+
+	@Override
+	public void close() throws IOException {
+		// tell the other end we are done
+		outbound.getOutputStream().close();
+		inbound.close();
+		deleteFile();
+	}
+
+	/**
+	 * Deletes the file holding the rings, if we created it and the client has
+	 * not deleted it already (the mappings outlive the file).
+	 */
+	private void deleteFile() {
+		if (path != null)
+			new File(path).delete();
+	}
+}
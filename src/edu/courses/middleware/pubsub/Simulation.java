@@ -0,0 +1,302 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import edu.courses.middleware.pubsub.BuyerItem.BuyingMode;
+
+/**
+ * A Simulation runs a whole auction system in a single JVM: a Broker tree and
+ * any number of embedded Buyers and Sellers, all joined over a
+ * MemoryTransport (so no ports are used and several Simulations may run side
+ * by side).
+ *
+ * Every Seller lists one Item, every Buyer is interested in (and bids
+ * automatically on) one Seller's Item, and every Seller then closes its
+ * auction. The time each phase takes is reported, along with the number of
+ * Brokers each listing visited on its way to the Buyers, so that large
+ * topologies (and fan-outs) can be reproduced and compared on one machine.
+ *
+ * Usage: Simulation [brokers] [sellers] [buyers] [maxBrokers] [maxClients]
+ * (the last two being every Broker's fan-out; see Configuration)
+ *
+ */
+public class Simulation {
+
+	/** How long to wait for each phase to complete. */
+	private static final long PHASE_TIMEOUT_MILLIS = 30 * 1000;
+
+	/** How long bidding must be quiet before the auctions are closed. */
+	private static final long QUIET_MILLIS = 500;
+
+	/** How long subscriptions are given to propagate through the tree. */
+	private static final long SETTLE_MILLIS = 1000;
+
+	/** The reserve of every listed Item. */
+	private static final float RESERVE = 5f;
+
+	private Configuration configuration;
+
+	private List<Broker> brokers;
+	private List<Seller> sellers;
+	private List<Buyer> buyers;
+
+	public Simulation() {
+		this(Settings.MAX_CHILD_BROKERS, Settings.MAX_CLIENTS);
+	}
+
+	/**
+	 * @param maxBrokers
+	 *            the maximum number of child Brokers of every Broker.
+	 * @param maxClients
+	 *            the maximum number of clients of every Broker.
+	 */
+	public Simulation(int maxBrokers, int maxClients) {
+		configuration = new Configuration(new MemoryTransport(), true,
+				maxBrokers, maxClients);
+
+		brokers = new ArrayList<Broker>();
+		sellers = new ArrayList<Seller>();
+		buyers = new ArrayList<Buyer>();
+	}
+
+	/**
+	 * Builds the Broker tree (one Broker at a time, so that the tree is
+	 * balanced), then joins the Sellers and Buyers (until the Broker tree is
+	 * at capacity).
+	 *
+	 * @param brokerCount
+	 * @param sellerCount
+	 * @param buyerCount
+	 * @return false if not every client could join.
+	 */
+	public boolean start(int brokerCount, int sellerCount, int buyerCount) {
+		for (int i = 0; i < brokerCount; i++)
+			brokers.add(new Broker(configuration));
+
+		for (int i = 0; i < sellerCount; i++) {
+			Seller seller = new Seller(configuration);
+			if (!seller.isConnected())
+				return false;
+			sellers.add(seller);
+		}
+
+		for (int i = 0; i < buyerCount; i++) {
+			Buyer buyer = new Buyer(configuration);
+			if (!buyer.isConnected())
+				return false;
+			buyers.add(buyer);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Runs one round of auctions.
+	 */
+	public void run() throws InterruptedException {
+		// every Buyer is interested in one Seller's Item
+		for (int i = 0; i < buyers.size(); i++) {
+			ItemTemplate template = new ItemTemplate();
+			template.addName(getItemName(i % sellers.size()));
+			buyers.get(i).subscribeInterest(template);
+		}
+
+		Thread.sleep(SETTLE_MILLIS);
+
+		// list the Items
+		long handled = getEventsHandled();
+		long start = System.nanoTime();
+		for (int i = 0; i < sellers.size(); i++)
+			sellers.get(i).listAvailableItem(getItemName(i),
+					new HashSet<String>(), RESERVE);
+
+		boolean delivered = await(new Condition() {
+			@Override
+			public boolean holds() {
+				for (Buyer buyer : buyers) {
+					if (buyer.getItemsOfInterest().isEmpty())
+						return false;
+				}
+
+				return true;
+			}
+		}, PHASE_TIMEOUT_MILLIS);
+		report("Listing", start, delivered);
+
+		// (nothing but the listings is routed during the listing phase)
+		long visits = getEventsHandled() - handled;
+		System.out.println("Listing visited " + Long.toString(visits)
+				+ " Brokers ("
+				+ Settings.formatter.format((float) visits / sellers.size())
+				+ " per Item)");
+
+		// every Buyer bids on its Item (and keeps re-bidding up to its
+		// maximum whenever it is outbid)
+		start = System.nanoTime();
+		for (int i = 0; i < buyers.size(); i++) {
+			// (the Buyers of each Item have different maximums)
+			Buyer buyer = buyers.get(i);
+			float max = RESERVE + 1 + i / sellers.size();
+			for (Item item : buyer.getItemsOfInterest().values()) {
+				BuyerItem buyerItem = new BuyerItem(item, 1f, max,
+						BuyingMode.AUTOMATIC);
+				buyer.publishBid(buyerItem, RESERVE + 1);
+			}
+		}
+
+		boolean quiet = awaitQuiet(PHASE_TIMEOUT_MILLIS);
+		report("Bidding", start, quiet);
+
+		// close the auctions
+		start = System.nanoTime();
+		for (Seller seller : sellers) {
+			for (Item item : new ArrayList<Item>(seller.getItemsAvailable()
+					.values()))
+				seller.finalizeSale(item);
+		}
+
+		boolean finalized = await(new Condition() {
+			@Override
+			public boolean holds() {
+				for (Buyer buyer : buyers) {
+					if (!buyer.getItemsBidding().isEmpty())
+						return false;
+				}
+
+				return true;
+			}
+		}, PHASE_TIMEOUT_MILLIS);
+		report("Closing", start, finalized);
+
+		// summarize the round
+		int sold = 0;
+		float revenue = 0f;
+		for (Seller seller : sellers) {
+			for (Item item : seller.getItemsSold().values()) {
+				if (item.getBuyerId() < 0)
+					continue;
+
+				sold++;
+				revenue += item.getBid();
+			}
+		}
+
+		System.out.println("Sold " + Integer.toString(sold) + " of "
+				+ Integer.toString(sellers.size()) + " Items for $"
+				+ Settings.formatter.format(revenue) + " (Broker tree of "
+				+ Integer.toString(getAllBrokers().size()) + " with fan-out "
+				+ Integer.toString(configuration.getMaxBrokers()) + "/"
+				+ Integer.toString(configuration.getMaxClients()) + ", "
+				+ Integer.toString(buyers.size()) + " Buyers)");
+	}
+
+	/**
+	 * Returns the number of Events handled by all Brokers so far.
+	 */
+	private long getEventsHandled() {
+		long handled = 0;
+		for (Broker broker : getAllBrokers())
+			handled += broker.getEventsHandled();
+
+		return handled;
+	}
+
+	/**
+	 * Returns all Brokers of the tree: those we started, and those started to
+	 * grow the tree.
+	 */
+	private List<Broker> getAllBrokers() {
+		List<Broker> all = new ArrayList<Broker>(brokers);
+		for (int i = 0; i < all.size(); i++)
+			all.addAll(all.get(i).getGrownBrokers());
+
+		return all;
+	}
+
+	private static String getItemName(int seller) {
+		return "item-" + Integer.toString(seller);
+	}
+
+	/**
+	 * Waits until no Seller's Items have received a new bid for QUIET_MILLIS.
+	 *
+	 * @return false if bidding did not quiet down in time.
+	 */
+	private boolean awaitQuiet(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+
+		float last = -1f;
+		while (System.currentTimeMillis() < deadline) {
+			float total = 0f;
+			for (Seller seller : sellers) {
+				for (Item item : seller.getItemsAvailable().values())
+					total += item.getBid();
+			}
+
+			if (total == last)
+				return true;
+
+			last = total;
+			Thread.sleep(QUIET_MILLIS);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Waits until a condition holds.
+	 *
+	 * @return false if the condition did not hold in time.
+	 */
+	private static boolean await(Condition condition, long timeout)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!condition.holds()) {
+			if (System.currentTimeMillis() >= deadline)
+				return false;
+
+			Thread.sleep(10);
+		}
+
+		return true;
+	}
+
+	private static void report(String phase, long start, boolean completed) {
+		System.out.println(phase
+				+ (completed ? " completed in " : " timed out after ")
+				+ Long.toString((System.nanoTime() - start) / 1000000) + " ms");
+	}
+
+	/** A condition waited on by a Simulation. */
+	private static abstract class Condition {
+		public abstract boolean holds();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int brokerCount = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		int sellerCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int buyerCount = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+		int maxBrokers = args.length > 3 ? Integer.parseInt(args[3])
+				: Settings.MAX_CHILD_BROKERS;
+		int maxClients = args.length > 4 ? Integer.parseInt(args[4])
+				: Settings.MAX_CLIENTS;
+
+		Simulation simulation = new Simulation(maxBrokers, maxClients);
+		if (!simulation.start(brokerCount, sellerCount, buyerCount)) {
+			System.err.println("The Broker tree of "
+					+ Integer.toString(brokerCount) + " Brokers is at capacity"
+					+ " (simulating the clients that joined).");
+		}
+
+		if (simulation.sellers.isEmpty()) {
+			System.err.println("No Seller could join the Broker tree.");
+			System.exit(1);
+		}
+
+		simulation.run();
+
+		System.exit(0);
+	}
+}
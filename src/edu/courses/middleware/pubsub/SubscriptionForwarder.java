@@ -0,0 +1,187 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.courses.middleware.pubsub.events.Event;
+import edu.courses.middleware.pubsub.events.InterestEvent;
+import edu.courses.middleware.pubsub.events.SubscriptionEvent;
+import edu.courses.middleware.pubsub.events.UnsubscriptionEvent;
+
+/**
+ * A SubscriptionForwarder decides which of the subscriptions a Broker needs
+ * delivered over one of its Broker links (to its parent or to a child Broker)
+ * are actually sent over that link.
+ *
+ * InterestEvents are only forwarded if they are not covered by an InterestEvent
+ * that has already been forwarded. Forwarding a broader InterestEvent withdraws
+ * the forwarded ones it covers, and removing a forwarded InterestEvent
+ * re-forwards the subscriptions it was covering. Optionally, InterestEvents
+ * that can be merged exactly (see ItemTemplate.merge) are forwarded as a
+ * single subscription.
+ *
+ * All other subscriptions are forwarded as they are.
+ *
+ */
+public class SubscriptionForwarder {
+
+	/** The link subscriptions are forwarded over. */
+	private ClientHandler link;
+
+	/** The subscriptions (other than InterestEvents) needed over the link. */
+	private Set<Event> subscriptions;
+
+	/** The InterestEvents needed over the link. */
+	private List<InterestEvent> active;
+
+	/** The InterestEvents forwarded over the link. */
+	private List<InterestEvent> forwarded;
+
+	/** The forwarded InterestEvents produced by merging. */
+	private List<InterestEvent> merged;
+
+	public SubscriptionForwarder(ClientHandler link) {
+		this.link = link;
+
+		subscriptions = new HashSet<Event>();
+		active = new ArrayList<InterestEvent>();
+		forwarded = new ArrayList<InterestEvent>();
+		merged = new ArrayList<InterestEvent>();
+	}
+
+	/**
+	 * Returns true if the subscription has been handed to the forwarder.
+	 *
+	 * @param event
+	 */
+	public synchronized boolean contains(Event event) {
+		if (event instanceof InterestEvent)
+			return active.contains(event);
+
+		return subscriptions.contains(event);
+	}
+
+	/**
+	 * Called when a subscription becomes needed over the link.
+	 *
+	 * @param event
+	 */
+	public synchronized void subscribe(Event event) {
+		if (!(event instanceof InterestEvent)) {
+			if (subscriptions.add(event))
+				link.sendEvent(new SubscriptionEvent(event));
+			return;
+		}
+
+		InterestEvent interest = (InterestEvent) event;
+		if (active.contains(interest))
+			return;
+
+		active.add(interest);
+
+		if (!isCovered(interest))
+			forward(interest);
+	}
+
+	/**
+	 * Called when a subscription is no longer needed over the link.
+	 *
+	 * @param event
+	 */
+	public synchronized void unsubscribe(Event event) {
+		if (!(event instanceof InterestEvent)) {
+			if (subscriptions.remove(event))
+				link.sendEvent(new UnsubscriptionEvent(event));
+			return;
+		}
+
+		if (!active.remove(event))
+			return;
+
+		// find the forwarded subscriptions that are no longer subscribed to
+		// (merged subscriptions are kept for as long as they cover anything)
+		List<InterestEvent> stale = new ArrayList<InterestEvent>();
+		for (InterestEvent f : forwarded) {
+			if (active.contains(f))
+				continue;
+
+			boolean needed = false;
+			if (merged.contains(f)) {
+				for (InterestEvent a : active) {
+					if (covers(f, a)) {
+						needed = true;
+						break;
+					}
+				}
+			}
+
+			if (!needed)
+				stale.add(f);
+		}
+
+		if (stale.isEmpty())
+			return;
+
+		forwarded.removeAll(stale);
+		merged.removeAll(stale);
+
+		// re-forward whatever the stale subscriptions were covering before
+		// withdrawing them
+		for (InterestEvent a : active) {
+			if (!isCovered(a))
+				forward(a);
+		}
+
+		for (InterestEvent f : stale)
+			link.sendEvent(new UnsubscriptionEvent(f));
+	}
+
+	private boolean isCovered(InterestEvent interest) {
+		for (InterestEvent f : forwarded) {
+			if (covers(f, interest))
+				return true;
+		}
+
+		return false;
+	}
+
+	private void forward(InterestEvent interest) {
+		InterestEvent subscription = interest;
+
+		if (Settings.MERGE_SUBSCRIPTIONS) {
+			for (InterestEvent f : forwarded) {
+				ItemTemplate template = ItemTemplate.merge(
+						f.getItemTemplate(), interest.getItemTemplate());
+				// (merging with a subscription we cover changes nothing)
+				if (template != null
+						&& !template.equals(interest.getItemTemplate())) {
+					subscription = new InterestEvent(template);
+					merged.add(subscription);
+					break;
+				}
+			}
+		}
+
+		link.sendEvent(new SubscriptionEvent(subscription));
+
+		// withdraw the forwarded subscriptions we now cover
+		List<InterestEvent> covered = new ArrayList<InterestEvent>();
+		for (InterestEvent f : forwarded) {
+			if (covers(subscription, f))
+				covered.add(f);
+		}
+
+		forwarded.removeAll(covered);
+		merged.removeAll(covered);
+		forwarded.add(subscription);
+
+		for (InterestEvent f : covered)
+			link.sendEvent(new UnsubscriptionEvent(f));
+	}
+
+	private static boolean covers(InterestEvent a, InterestEvent b) {
+		return a.getItemTemplate().covers(b.getItemTemplate());
+	}
+}
@@ -0,0 +1,380 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.courses.middleware.pubsub.events.AvailableItemEvent;
+import edu.courses.middleware.pubsub.events.BidEvent;
+import edu.courses.middleware.pubsub.events.BidUpdateEvent;
+import edu.courses.middleware.pubsub.events.Event;
+import edu.courses.middleware.pubsub.events.InterestEvent;
+import edu.courses.middleware.pubsub.events.SaleFinalizedEvent;
+
+/**
+ * A SubscriptionTable holds the subscriptions of a single ClientHandler (i.e.,
+ * of a client and possibly the client's subtree).
+ *
+ * Subscriptions are split by Event type. Exact-match subscriptions on a
+ * particular Item (BidEvent, BidUpdateEvent, SaleFinalizedEvent) are kept in a
+ * hash index keyed by the Item's unique identifier so that they can be matched
+ * in constant time. All other subscriptions (e.g., InterestEvents) are matched
+ * by scanning.
+ *
+ * The table also keeps a compact summary (a counting Bloom filter) of the Item
+ * identifiers, names, and attributes it holds subscriptions for. The summary
+ * lets a Broker rule out most irrelevant Events without an exact match. Names
+ * and attributes are summarized by their symbols in the Broker's SymbolTable,
+ * which the table holds on to for as long as it holds the subscriptions.
+ *
+ * The table is written by the owning ClientHandler's thread and may be read
+ * concurrently by the threads of other ClientHandlers routing Events through
+ * the same Broker.
+ *
+ */
+public class SubscriptionTable {
+
+	/**
+	 * Exact-match subscriptions keyed by Event type and then by Item
+	 * identifier.
+	 */
+	private ConcurrentHashMap<Class<? extends Event>, Set<String>> itemSubscriptions;
+
+	/** All remaining subscriptions, matched by scanning. */
+	private CopyOnWriteArrayList<Event> subscriptions;
+
+	/** The key spaces of the summary. */
+	private static final long ITEM_KEYS = 1L << 32;
+	private static final long NAME_KEYS = 2L << 32;
+	private static final long ATTRIBUTE_KEYS = 3L << 32;
+
+	/** A summary of the keys subscribed to. */
+	private CountingBloomFilter summary;
+
+	/** Encodes the names and attributes of subscribed ItemTemplates. */
+	private SymbolTable symbolTable;
+
+	/**
+	 * The number of InterestEvents, and of other subscriptions, that the
+	 * summary cannot describe by key (i.e., that may match any Item).
+	 */
+	private AtomicInteger interestWildcards;
+	private AtomicInteger otherWildcards;
+
+	/**
+	 * @param symbolTable
+	 *            the SymbolTable of the Broker holding the table.
+	 */
+	public SubscriptionTable(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+
+		itemSubscriptions = new ConcurrentHashMap<Class<? extends Event>, Set<String>>();
+		subscriptions = new CopyOnWriteArrayList<Event>();
+		summary = new CountingBloomFilter(Settings.SUBSCRIPTION_SUMMARY_SIZE);
+		interestWildcards = new AtomicInteger();
+		otherWildcards = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the Item identifier an Event is keyed by, or null if the Event is
+	 * not an exact-match Item Event.
+	 *
+	 * @param event
+	 * @return an Item identifier or null.
+	 */
+	public static String getItemKey(Event event) {
+		if (event instanceof BidEvent)
+			return ((BidEvent) event).getItemId();
+		if (event instanceof BidUpdateEvent)
+			return ((BidUpdateEvent) event).getItemId();
+		if (event instanceof SaleFinalizedEvent)
+			return ((SaleFinalizedEvent) event).getItemId();
+
+		return null;
+	}
+
+	/**
+	 * Adds a subscription to the table.
+	 *
+	 * @param event
+	 * @return true if the subscription was not already present.
+	 */
+	public boolean add(Event event) {
+		String itemId = getItemKey(event);
+		if (itemId == null) {
+			if (!subscriptions.addIfAbsent(event))
+				return false;
+
+			if (event instanceof InterestEvent)
+				((InterestEvent) event).compile(symbolTable);
+
+			summarize(event, true);
+			return true;
+		}
+
+		Set<String> itemIds = itemSubscriptions.get(event.getClass());
+		if (itemIds == null) {
+			Set<String> created = ConcurrentHashMap.newKeySet();
+			itemIds = itemSubscriptions.putIfAbsent(event.getClass(), created);
+			if (itemIds == null)
+				itemIds = created;
+		}
+
+		if (!itemIds.add(itemId))
+			return false;
+
+		summary.add(getSummaryKey(event.getClass(), itemId));
+		return true;
+	}
+
+	/**
+	 * Removes a subscription from the table.
+	 *
+	 * @param event
+	 * @return true if the subscription was present.
+	 */
+	public boolean remove(Event event) {
+		String itemId = getItemKey(event);
+		if (itemId == null) {
+			if (!subscriptions.remove(event))
+				return false;
+
+			// (the summary is updated while the symbols are still held)
+			summarize(event, false);
+			if (event instanceof InterestEvent)
+				ItemPredicates.release(
+						((InterestEvent) event).getItemTemplate(), symbolTable);
+			return true;
+		}
+
+		Set<String> itemIds = itemSubscriptions.get(event.getClass());
+		if (itemIds == null || !itemIds.remove(itemId))
+			return false;
+
+		summary.remove(getSummaryKey(event.getClass(), itemId));
+		return true;
+	}
+
+	/**
+	 * Returns true if the subscription is held by the table.
+	 *
+	 * @param event
+	 */
+	public boolean contains(Event event) {
+		String itemId = getItemKey(event);
+		if (itemId == null)
+			return subscriptions.contains(event);
+
+		Set<String> itemIds = itemSubscriptions.get(event.getClass());
+		return itemIds != null && itemIds.contains(itemId);
+	}
+
+	/**
+	 * Returns false if no subscription in the table can match the Event. This
+	 * is a cheap test that may return true even if nothing matches.
+	 *
+	 * @param event
+	 *            a published Event.
+	 */
+	public boolean mightMatch(Event event) {
+		String itemId = getItemKey(event);
+		if (itemId != null)
+			return summary.mightContain(getSummaryKey(event.getClass(), itemId));
+
+		if (!(event instanceof AvailableItemEvent))
+			return true;
+
+		if (interestWildcards.get() > 0 || otherWildcards.get() > 0)
+			return true;
+
+		Item item = ((AvailableItemEvent) event).getItem();
+		int name = item.getNameSymbol(symbolTable);
+		if (name != SymbolTable.NO_SYMBOL
+				&& summary.mightContain(getNameKey(name)))
+			return true;
+
+		for (int attribute : item.getAttributeSymbols(symbolTable)) {
+			if (summary.mightContain(getAttributeKey(attribute)))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns true if any subscription in the table matches the Event.
+	 *
+	 * @param event
+	 *            a published Event.
+	 */
+	public boolean matches(Event event) {
+		String itemId = getItemKey(event);
+		if (itemId != null) {
+			Set<String> itemIds = itemSubscriptions.get(event.getClass());
+			return itemIds != null && itemIds.contains(itemId);
+		}
+
+		// large tables are matched in partitions when routing in parallel
+		if (Settings.PARALLEL_FAN_OUT && ForkJoinTask.inForkJoinPool()
+				&& subscriptions.size() > Settings.MATCH_PARTITION_SIZE) {
+			Event[] snapshot = subscriptions.toArray(new Event[0]);
+			return new MatchTask(event, snapshot, 0, snapshot.length,
+					new AtomicBoolean()).invoke();
+		}
+
+		for (Event subscription : subscriptions) {
+			if (subscription.matches(event))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns a snapshot of all subscriptions held by the table.
+	 */
+	public List<Event> getSubscriptions() {
+		List<Event> events = new ArrayList<Event>(subscriptions);
+
+		for (Map.Entry<Class<? extends Event>, Set<String>> entry : itemSubscriptions
+				.entrySet()) {
+			for (String itemId : entry.getValue())
+				events.add(createItemSubscription(entry.getKey(), itemId));
+		}
+
+		return events;
+	}
+
+	/**
+	 * Removes all subscriptions held by the table, releasing their symbols
+	 * (done when the table's ClientHandler closes).
+	 */
+	public void clear() {
+		for (Event event : subscriptions)
+			remove(event);
+
+		itemSubscriptions.clear();
+	}
+
+	/**
+	 * Adds a subscription (other than an exact-match Item subscription) to, or
+	 * removes it from, the summary.
+	 */
+	private void summarize(Event event, boolean add) {
+		if (!(event instanceof InterestEvent)) {
+			if (add)
+				otherWildcards.incrementAndGet();
+			else
+				otherWildcards.decrementAndGet();
+			return;
+		}
+
+		ItemTemplate template = ((InterestEvent) event).getItemTemplate();
+
+		// a template matches by key only if it needs a matching name or a
+		// matching attribute
+		if (template.getNames().isEmpty() || template.getAttributes().isEmpty()) {
+			if (add)
+				interestWildcards.incrementAndGet();
+			else
+				interestWildcards.decrementAndGet();
+			return;
+		}
+
+		// (the template's symbols are held while it is subscribed to)
+		for (int n : symbolTable.lookupAll(template.getNames())) {
+			if (add)
+				summary.add(getNameKey(n));
+			else
+				summary.remove(getNameKey(n));
+		}
+
+		for (int a : symbolTable.lookupAll(template.getAttributes())) {
+			if (add)
+				summary.add(getAttributeKey(a));
+			else
+				summary.remove(getAttributeKey(a));
+		}
+	}
+
+	private static long getSummaryKey(Class<? extends Event> type,
+			String itemId) {
+		return ITEM_KEYS * type.getName().hashCode()
+				+ (itemId.hashCode() & 0xFFFFFFFFL);
+	}
+
+	private static long getNameKey(int symbol) {
+		return NAME_KEYS | symbol;
+	}
+
+	private static long getAttributeKey(int symbol) {
+		return ATTRIBUTE_KEYS | symbol;
+	}
+
+	/**
+	 * Matches an Event against a range of subscriptions, splitting the range
+	 * into partitions of at most MATCH_PARTITION_SIZE subscriptions. Stops as
+	 * soon as any partition finds a match.
+	 */
+	private static class MatchTask extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		private Event event;
+		private Event[] subscriptions;
+		private int from;
+		private int to;
+		private AtomicBoolean found;
+
+		private MatchTask(Event event, Event[] subscriptions, int from,
+				int to, AtomicBoolean found) {
+			this.event = event;
+			this.subscriptions = subscriptions;
+			this.from = from;
+			this.to = to;
+			this.found = found;
+		}
+
+		@Override
+		protected Boolean compute() {
+			if (to - from > Settings.MATCH_PARTITION_SIZE) {
+				int middle = (from + to) >>> 1;
+				MatchTask left = new MatchTask(event, subscriptions, from,
+						middle, found);
+				left.fork();
+
+				boolean matched = new MatchTask(event, subscriptions, middle,
+						to, found).compute();
+				return left.join() || matched;
+			}
+
+			for (int i = from; i < to && !found.get(); i++) {
+				if (subscriptions[i].matches(event)) {
+					found.set(true);
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Recreates an exact-match Item subscription from its index entry.
+	 */
+	private static Event createItemSubscription(
+			Class<? extends Event> type, String itemId) {
+		if (type == BidEvent.class)
+			return new BidEvent(itemId);
+		if (type == BidUpdateEvent.class)
+			return new BidUpdateEvent(itemId);
+
+		return new SaleFinalizedEvent(itemId);
+	}
+}
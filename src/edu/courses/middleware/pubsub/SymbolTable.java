@@ -0,0 +1,204 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A SymbolTable dictionary-encodes the Item names and attributes a Broker's
+ * subscriptions refer to as small integer symbols (every Broker has its own).
+ *
+ * Only subscribed ItemTemplates add symbols to the table, and each symbol is
+ * reference counted: it is released once the last template using it is
+ * unsubscribed, so the table only ever holds the vocabulary of the current
+ * subscriptions. Items are merely looked up (see Item.getNameSymbol): a name
+ * or attribute that no subscription mentions has no symbol and cannot match
+ * anything. Symbols are never reused, so a symbol looked up earlier can never
+ * stand for another String.
+ *
+ * Sets of symbols are kept as sorted int arrays, so that their size follows
+ * the number of symbols they hold rather than the largest symbol.
+ *
+ */
+public class SymbolTable {
+
+	/** The symbol of the null String. */
+	public static final int NULL_SYMBOL = 0;
+
+	/** Looked up for Strings that have no symbol. */
+	public static final int NO_SYMBOL = -1;
+
+	/** The empty set of symbols. */
+	public static final int[] NO_SYMBOLS = new int[0];
+
+	/** A symbol and the number of acquisitions holding it. */
+	private static class Symbol {
+		private final int value;
+		private int references = 0;
+
+		private Symbol(int value) {
+			this.value = value;
+		}
+	}
+
+	/** The symbols held (read without locking by routing threads). */
+	private ConcurrentHashMap<String, Symbol> symbols;
+
+	/** The next symbol to assign. */
+	private int nextSymbol = NULL_SYMBOL + 1;
+
+	/**
+	 * Changes whenever a String gains a symbol (symbols looked up before then
+	 * may be missing it).
+	 */
+	private volatile int version = 0;
+
+	public SymbolTable() {
+		symbols = new ConcurrentHashMap<String, Symbol>();
+	}
+
+	/**
+	 * Returns the symbol of a String, assigning one if necessary, and holds it
+	 * until it is released as often as it was acquired.
+	 *
+	 * @param string
+	 */
+	public synchronized int acquire(String string) {
+		if (string == null)
+			return NULL_SYMBOL;
+
+		Symbol symbol = symbols.get(string);
+		if (symbol == null) {
+			symbol = new Symbol(nextSymbol++);
+			symbols.put(string, symbol);
+			version++;
+		}
+
+		symbol.references++;
+		return symbol.value;
+	}
+
+	/**
+	 * Acquires the symbols of a set of Strings (see acquire).
+	 *
+	 * @param strings
+	 * @return the sorted symbols.
+	 */
+	public synchronized int[] acquireAll(Set<String> strings) {
+		int[] set = new int[strings.size()];
+		int i = 0;
+		for (String string : strings)
+			set[i++] = acquire(string);
+
+		Arrays.sort(set);
+		return set;
+	}
+
+	/**
+	 * Releases an acquired symbol (once released as often as it was acquired,
+	 * the String no longer has a symbol).
+	 *
+	 * @param string
+	 */
+	public synchronized void release(String string) {
+		if (string == null)
+			return;
+
+		Symbol symbol = symbols.get(string);
+		if (symbol != null && --symbol.references <= 0)
+			symbols.remove(string);
+	}
+
+	/**
+	 * Releases the acquired symbols of a set of Strings.
+	 *
+	 * @param strings
+	 */
+	public synchronized void releaseAll(Set<String> strings) {
+		for (String string : strings)
+			release(string);
+	}
+
+	/**
+	 * Returns the symbol of a String, or NO_SYMBOL if it has none.
+	 *
+	 * @param string
+	 */
+	public int lookup(String string) {
+		if (string == null)
+			return NULL_SYMBOL;
+
+		Symbol symbol = symbols.get(string);
+		return symbol == null ? NO_SYMBOL : symbol.value;
+	}
+
+	/**
+	 * Returns the sorted symbols of those Strings of a set that have one.
+	 *
+	 * @param strings
+	 */
+	public int[] lookupAll(Set<String> strings) {
+		int[] set = new int[strings.size()];
+		int size = 0;
+		for (String string : strings) {
+			int symbol = lookup(string);
+			if (symbol != NO_SYMBOL)
+				set[size++] = symbol;
+		}
+
+		if (size == 0)
+			return NO_SYMBOLS;
+
+		if (size < set.length)
+			set = Arrays.copyOf(set, size);
+		Arrays.sort(set);
+		return set;
+	}
+
+	/**
+	 * Returns the table's version (see lookup), which changes whenever a
+	 * String gains a symbol.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of symbols held.
+	 */
+	public int size() {
+		return symbols.size();
+	}
+
+	/**
+	 * Returns true if a sorted set of symbols contains a symbol.
+	 *
+	 * @param set
+	 * @param symbol
+	 */
+	public static boolean contains(int[] set, int symbol) {
+		return Arrays.binarySearch(set, symbol) >= 0;
+	}
+
+	/**
+	 * Returns true if two sorted sets of symbols have a symbol in common.
+	 *
+	 * @param a
+	 * @param b
+	 */
+	public static boolean intersects(int[] a, int[] b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] == b[j])
+				return true;
+
+			if (a[i] < b[j])
+				i++;
+			else
+				j++;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,61 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A Transport over TCP: the root Broker listens on a known port and every
+ * other Broker on any free port.
+ * 
+ */
+public class TcpTransport extends Transport {
+
+	/** The root Broker's host and listening port. */
+	private String host;
+	private int port;
+
+	public TcpTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public SocketAddress getRootAddress() {
+		return new InetSocketAddress(host, port);
+	}
+
+	@Override
+	public ServerSocket listen(boolean root) throws IOException {
+		int port = root ? this.port : 0;
+
+		// (a Reactor can only serve sockets that have a channel)
+		if (Settings.NIO_REACTOR)
+			return ServerSocketChannel.open().bind(new InetSocketAddress(port))
+					.socket();
+
+		return new ServerSocket(port);
+	}
+
+	@Override
+	public Socket connect(SocketAddress address) throws IOException {
+		// (a Reactor can only serve sockets that have a channel)
+		Socket socket = Settings.NIO_REACTOR ? SocketChannel.open().socket()
+				: new Socket();
+
+		socket.connect(address, Settings.JOIN_TIMEOUT_MILLIS);
+		return socket;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+}
@@ -0,0 +1,90 @@
+package edu.courses.middleware.pubsub;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the long-lived loops of the system's participants (connection
+ * handlers, listeners, writers, and command line handlers), each on a thread
+ * of its own.
+ * 
+ * If Settings.VIRTUAL_THREADS is set and the JVM supports virtual threads
+ * (Java 21 or later), the loops run on virtual threads, so blocking I/O no
+ * longer ties up a platform thread per connection. Otherwise each loop runs
+ * on a new platform thread.
+ * 
+ */
+public final class Threads {
+
+	/** Runs each task on a thread of its own. */
+	private static final Executor executor = createExecutor();
+
+	/**
+	 * Keeps the JVM alive while virtual threads (which are always daemon
+	 * threads) run the participant's loops.
+	 */
+	private static Thread keepAlive = null;
+
+	private Threads() {
+	}
+
+	/**
+	 * Runs a loop on a new thread.
+	 * 
+	 * @param task
+	 */
+	public static void start(Runnable task) {
+		if (isVirtual())
+			keepAlive();
+
+		executor.execute(task);
+	}
+
+	/**
+	 * Returns true if loops run on virtual threads.
+	 */
+	public static boolean isVirtual() {
+		return !(executor instanceof PlatformExecutor);
+	}
+
+	private static synchronized void keepAlive() {
+		if (keepAlive != null)
+			return;
+
+		keepAlive = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					new CountDownLatch(1).await();
+				} catch (InterruptedException e) {
+				}
+			}
+		}, "KeepAlive");
+		keepAlive.start();
+	}
+
+	private static Executor createExecutor() {
+		if (Settings.VIRTUAL_THREADS) {
+			try {
+				// (looked up reflectively so that we still run on older JVMs)
+				return (Executor) java.util.concurrent.Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor")
+						.invoke(null);
+
+			} catch (ReflectiveOperationException e) {
+				System.err.println("Virtual threads are not supported by this "
+						+ "JVM (using platform threads instead).");
+			}
+		}
+
+		return new PlatformExecutor();
+	}
+
+	/** Runs each task on a new platform thread. */
+	private static class PlatformExecutor implements Executor {
+		@Override
+		public void execute(Runnable task) {
+			new Thread(task).start();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+/**
+ * A Transport opens the connections between the system's participants: the
+ * listening sockets Brokers serve join requests on, and the connections
+ * clients join the Broker tree over.
+ * 
+ * Each participant is given its Transport through its Configuration, so
+ * several Broker trees (e.g., on different ports, or in memory) may run in
+ * the same JVM. The default is chosen by Settings.UNIX_DOMAIN_SOCKETS: TCP
+ * (see TcpTransport) or Unix domain sockets (see UnixDomainTransport).
+ * 
+ * A Broker's listening socket is either reached by its port (TCP) or by a
+ * path (any other Transport), which is what join requests and redirects
+ * carry.
+ * 
+ */
+public abstract class Transport {
+
+	/**
+	 * Returns the Transport configured by Settings (reaching the root Broker
+	 * at its globally known port or path).
+	 */
+	public static Transport getDefault() {
+		if (Settings.UNIX_DOMAIN_SOCKETS)
+			return new UnixDomainTransport(Broker.ROOT_BROKER_PATH);
+
+		return new TcpTransport("localhost", Broker.ROOT_BROKER_PORT);
+	}
+
+	/**
+	 * Returns the address the root Broker listens on.
+	 */
+	public abstract SocketAddress getRootAddress();
+
+	/**
+	 * Opens a listening socket.
+	 * 
+	 * @param root
+	 *            true to listen on the root Broker's address (otherwise any
+	 *            will do).
+	 * @return the listening socket.
+	 * @throws IOException
+	 *             thrown if the address is in use (e.g., the root Broker
+	 *             already exists).
+	 */
+	public abstract ServerSocket listen(boolean root) throws IOException;
+
+	/**
+	 * Connects to a listening socket (without waiting on an unresponsive
+	 * Broker forever).
+	 * 
+	 * @param address
+	 * @return the connected socket.
+	 * @throws IOException
+	 */
+	public abstract Socket connect(SocketAddress address) throws IOException;
+
+	/**
+	 * Returns the path a listening socket is reached by (null if it is reached
+	 * by its port).
+	 * 
+	 * @param address
+	 *            the listening socket's address.
+	 */
+	public String getPath(SocketAddress address) {
+		return null;
+	}
+
+	/**
+	 * Returns the address of the listening socket reached by a path.
+	 * 
+	 * @param path
+	 *            a path sent in a join request or redirect.
+	 */
+	public SocketAddress getAddress(String path) {
+		throw new IllegalArgumentException(getClass().getSimpleName()
+				+ " does not reach sockets by path (" + path + ")");
+	}
+}
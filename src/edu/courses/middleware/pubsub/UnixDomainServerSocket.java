@@ -0,0 +1,134 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A ServerSocket listening on a Unix domain socket (used instead of TCP
+ * loopback if Settings.UNIX_DOMAIN_SOCKETS is set). Accepted connections are
+ * UnixDomainSockets.
+ *
+ * The socket's files are deleted when the socket is closed (or the JVM
+ * exits).
+ * A lock on a companion ".lock" file is held while listening, so that a
+ * socket file left behind by a listener that has gone away can be told apart
+ * from one that is still listened on.
+ *
+ */
+public class UnixDomainServerSocket extends ServerSocket {
+
+	private ServerSocketChannel channel;
+	private UnixDomainSocketAddress address;
+
+	/** Held while listening (see the class comment). */
+	private FileChannel lockFile;
+
+	private UnixDomainServerSocket(ServerSocketChannel channel,
+			UnixDomainSocketAddress address, FileChannel lockFile)
+			throws IOException {
+		this.channel = channel;
+		this.address = address;
+		this.lockFile = lockFile;
+	}
+
+	/**
+	 * Listens on a path.
+	 *
+	 * A file left behind at the path by a listener that has gone away is
+	 * replaced, but a path that is still being listened on is not.
+	 *
+	 * @param path
+	 * @return the listening socket.
+	 * @throws BindException
+	 *             thrown if the path is being listened on.
+	 * @throws IOException
+	 */
+	public static UnixDomainServerSocket bind(String path) throws IOException {
+		UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+
+		FileChannel lockFile = FileChannel.open(Paths.get(path + ".lock"),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		ServerSocketChannel channel = null;
+		try {
+			if (lockFile.tryLock() == null)
+				throw new BindException(path + " is in use");
+
+			// (left behind by a listener that has gone away)
+			File file = new File(path);
+			file.delete();
+
+			channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			channel.bind(address);
+			file.deleteOnExit();
+			new File(path + ".lock").deleteOnExit();
+
+		} catch (IOException e) {
+			if (channel != null)
+				channel.close();
+			lockFile.close();
+			throw e;
+		}
+
+		return new UnixDomainServerSocket(channel, address, lockFile);
+	}
+
+	/**
+	 * Returns the path listened on.
+	 */
+	public String getPath() {
+		return address.getPath().toString();
+	}
+
+	@Override
+	public Socket accept() throws IOException {
+		return new UnixDomainSocket(channel.accept());
+	}
+
+	@Override
+	public ServerSocketChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return address;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	@Override
+	public boolean isBound() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		new File(getPath()).delete();
+		new File(getPath() + ".lock").delete();
+		lockFile.close();
+	}
+
+	@Override
+	public String toString() {
+		return "UnixDomainServerSocket[" + getPath() + "]";
+	}
+}
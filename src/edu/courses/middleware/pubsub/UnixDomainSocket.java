@@ -0,0 +1,188 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A Socket over a Unix domain socket channel (used instead of TCP loopback if
+ * Settings.UNIX_DOMAIN_SOCKETS is set), so that the rest of the system can
+ * treat every connection the same way.
+ *
+ * Only the parts of Socket used by the system are supported: the streams,
+ * the channel (e.g., for a Reactor), the read timeout, and (half-)closing. As Unix
+ * domain sockets only connect processes on the same machine, the remote
+ * address is reported as the loopback address.
+ *
+ */
+public class UnixDomainSocket extends Socket {
+
+	private SocketChannel channel;
+
+	/** The read timeout (milliseconds, 0 meaning none). */
+	private volatile int timeout = 0;
+
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * @param channel
+	 *            a connected (blocking) Unix domain socket channel.
+	 */
+	public UnixDomainSocket(SocketChannel channel) {
+		this.channel = channel;
+
+		in = new TimedInputStream();
+		out = Channels.newOutputStream(channel);
+	}
+
+	/**
+	 * Connects to a listening Unix domain socket.
+	 *
+	 * @param address
+	 * @return the connected socket.
+	 * @throws IOException
+	 */
+	public static UnixDomainSocket open(UnixDomainSocketAddress address)
+			throws IOException {
+		SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.connect(address);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		return new UnixDomainSocket(channel);
+	}
+
+	@Override
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	@Override
+	public void setSoTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public int getSoTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return InetAddress.getLoopbackAddress();
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		try {
+			return channel.getRemoteAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		try {
+			return channel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isConnected() {
+		return channel.isConnected();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public void shutdownOutput() throws IOException {
+		channel.shutdownOutput();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "UnixDomainSocket[" + getRemoteSocketAddress() + "]";
+	}
+
+	/** Reads from the channel, waiting at most the read timeout (if any). */
+	private class TimedInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			if (timeout == 0)
+				return channel.read(buffer);
+
+			// wait for the channel to become readable, then go back to
+			// blocking mode (only used during join handshakes)
+			long deadline = System.currentTimeMillis() + timeout;
+			channel.configureBlocking(false);
+			Selector selector = Selector.open();
+			try {
+				channel.register(selector, SelectionKey.OP_READ);
+
+				int n;
+				while ((n = channel.read(buffer)) == 0) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						throw new SocketTimeoutException("Read timed out");
+
+					selector.select(remaining);
+					selector.selectedKeys().clear();
+				}
+
+				return n;
+
+			} finally {
+				// (closing the selector deregisters the channel)
+				selector.close();
+				channel.configureBlocking(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package edu.courses.middleware.pubsub;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+
+/**
+ * A Transport over Unix domain sockets: the root Broker listens on a known
+ * path and every other Broker on a temporary path (see
+ * UnixDomainServerSocket).
+ * 
+ */
+public class UnixDomainTransport extends Transport {
+
+	/** The root Broker's listening path. */
+	private String rootPath;
+
+	public UnixDomainTransport(String rootPath) {
+		this.rootPath = rootPath;
+	}
+
+	@Override
+	public SocketAddress getRootAddress() {
+		return UnixDomainSocketAddress.of(rootPath);
+	}
+
+	@Override
+	public ServerSocket listen(boolean root) throws IOException {
+		String path = rootPath;
+		if (!root) {
+			File file = File.createTempFile("pubsub-broker-", ".sock");
+			file.delete();
+			path = file.getPath();
+		}
+
+		return UnixDomainServerSocket.bind(path);
+	}
+
+	@Override
+	public Socket connect(SocketAddress address) throws IOException {
+		return UnixDomainSocket.open((UnixDomainSocketAddress) address);
+	}
+
+	@Override
+	public String getPath(SocketAddress address) {
+		if (address instanceof UnixDomainSocketAddress)
+			return ((UnixDomainSocketAddress) address).getPath().toString();
+
+		return null;
+	}
+
+	@Override
+	public SocketAddress getAddress(String path) {
+		return UnixDomainSocketAddress.of(path);
+	}
+}
@@ -0,0 +1,113 @@
+package edu.courses.middleware.pubsub.events;
+
+/**
+ * This Event is used to announce, along a path in the Broker tree, the type of
+ * Events a publisher will publish.
+ * 
+ * Subscriptions are only sent towards the parts of the Broker tree that
+ * advertise publications able to match them.
+ * 
+ */
+public class AdvertisementEvent extends Event {
+	private static final long serialVersionUID = 2940146520715386455L;
+
+	/** The type of Event that will be published. */
+	private Class<? extends Event> type;
+
+	/**
+	 * The prefix shared by the identifiers of the Items that the publications
+	 * are about (null if they may be about any Item).
+	 */
+	private String itemPrefix;
+
+	public AdvertisementEvent(Class<? extends Event> type, String itemPrefix) {
+		this.type = type;
+		this.itemPrefix = itemPrefix;
+	}
+
+	public Class<? extends Event> getType() {
+		return type;
+	}
+
+	public String getItemPrefix() {
+		return itemPrefix;
+	}
+
+	/**
+	 * Determines whether an Event published under this advertisement could
+	 * match a subscription.
+	 * 
+	 * @param subscription
+	 *            a subscribed Event.
+	 * @return true if the subscription may be matched.
+	 */
+	public boolean intersects(Event subscription) {
+		if (subscription instanceof InterestEvent)
+			return type == AvailableItemEvent.class;
+
+		if (subscription.getClass() != type)
+			return false;
+
+		String itemId = null;
+		if (subscription instanceof BidEvent)
+			itemId = ((BidEvent) subscription).getItemId();
+		else if (subscription instanceof BidUpdateEvent)
+			itemId = ((BidUpdateEvent) subscription).getItemId();
+		else if (subscription instanceof SaleFinalizedEvent)
+			itemId = ((SaleFinalizedEvent) subscription).getItemId();
+
+		return itemPrefix == null || itemId == null
+				|| itemId.startsWith(itemPrefix);
+	}
+
+	@Override
+	public boolean matches(Event event) {
+		if (event == null)
+			return false;
+		if (event.getClass() != type)
+			return false;
+		if (event instanceof AvailableItemEvent)
+			return itemPrefix == null
+					|| ((AvailableItemEvent) event).getItem().getId()
+							.startsWith(itemPrefix);
+		return intersects(event);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ ((itemPrefix == null) ? 0 : itemPrefix.hashCode());
+		result = prime * result + ((type == null) ? 0 : type.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (!(obj instanceof AdvertisementEvent))
+			return false;
+		AdvertisementEvent other = (AdvertisementEvent) obj;
+		if (itemPrefix == null) {
+			if (other.itemPrefix != null)
+				return false;
+		} else if (!itemPrefix.equals(other.itemPrefix))
+			return false;
+		if (type == null) {
+			if (other.type != null)
+				return false;
+		} else if (!type.equals(other.type))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "AdvertisementEvent [type=" + type.getSimpleName()
+				+ ", itemPrefix=" + itemPrefix + "]";
+	}
+}
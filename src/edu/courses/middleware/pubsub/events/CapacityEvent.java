@@ -0,0 +1,57 @@
+package edu.courses.middleware.pubsub.events;
+
+/**
+ * The Event issued by a Broker to its parent whenever the room left in its
+ * subtree changes. This Event carries how far below the issuing Broker the
+ * nearest available connection spots for Brokers and for clients (Buyers and
+ * Sellers) are, so that joining clients can be placed as close to the root
+ * as possible.
+ * 
+ */
+public class CapacityEvent extends Event {
+	private static final long serialVersionUID = -2904419283726715337L;
+
+	/**
+	 * The depth (in Broker tree levels below the issuing Broker, 0 meaning
+	 * the issuing Broker itself) of the nearest available spot for a Broker
+	 * (-1 if there is none).
+	 */
+	private int brokerDepth;
+
+	/** The depth of the nearest available spot for a client (-1 if none). */
+	private int clientDepth;
+
+	public CapacityEvent(int brokerDepth, int clientDepth) {
+		this.brokerDepth = brokerDepth;
+		this.clientDepth = clientDepth;
+	}
+
+	public int getBrokerDepth() {
+		return brokerDepth;
+	}
+
+	public int getClientDepth() {
+		return clientDepth;
+	}
+
+	@Override
+	public boolean matches(Event event) {
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof CapacityEvent))
+			return false;
+		CapacityEvent other = (CapacityEvent) obj;
+		return brokerDepth == other.brokerDepth
+				&& clientDepth == other.clientDepth;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * brokerDepth + clientDepth;
+	}
+}
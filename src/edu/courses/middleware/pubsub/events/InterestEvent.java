@@ -1,6 +1,8 @@
 package edu.courses.middleware.pubsub.events;
 
+import edu.courses.middleware.pubsub.ItemPredicate;
 import edu.courses.middleware.pubsub.ItemTemplate;
+import edu.courses.middleware.pubsub.SymbolTable;
 
 /**
  * The Event published by Buyers when expressing interest in listed Item
@@ -13,6 +15,9 @@ public class InterestEvent extends Event {
 	/** The Buyer's Item preferences. */
 	private ItemTemplate template;
 
+	/** The compiled template (see compile). */
+	private transient volatile ItemPredicate predicate;
+
 	public InterestEvent(ItemTemplate template) {
 		this.template = template;
 	}
@@ -21,6 +26,17 @@ public class InterestEvent extends Event {
 		return template;
 	}
 
+	/**
+	 * Compiles the template with a Broker's SymbolTable, which is then used for
+	 * all further matching. This is done when the interest is subscribed to
+	 * (each compilation acquires symbols; see ItemTemplate.compile).
+	 * 
+	 * @param table
+	 */
+	public void compile(SymbolTable table) {
+		predicate = template.compile(table);
+	}
+
 	@Override
 	public boolean matches(Event event) {
 		if (event == null)
@@ -28,6 +44,9 @@ public class InterestEvent extends Event {
 		if (!(event instanceof AvailableItemEvent))
 			return false;
 		AvailableItemEvent availableItem = (AvailableItemEvent) event;
+		ItemPredicate compiled = predicate;
+		if (compiled != null)
+			return compiled.matches(availableItem.getItem());
 		if (!template.matches(availableItem.getItem()))
 			return false;
 		return true;
@@ -0,0 +1,65 @@
+package edu.courses.middleware.pubsub.events;
+
+/**
+ * The Event issued by a Broker (server) to a client (Buyer, Seller, Broker)
+ * whose join request should be served further down the Broker tree. This
+ * Event carries the address of the Broker the client should send its join
+ * request to next.
+ * 
+ */
+public class JoinRedirectEvent extends Event {
+	private static final long serialVersionUID = 4217791934501863652L;
+
+	/** The assigned unique identifier. */
+	private long identifier;
+
+	/** The next Broker's host. */
+	private String host;
+
+	/** The next Broker's listening port. */
+	private int port;
+
+	/**
+	 * The next Broker's Unix domain socket path (null if it listens on a
+	 * port).
+	 */
+	private String path;
+
+	public JoinRedirectEvent(long identifier, String host, int port) {
+		this(identifier, host, port, null);
+	}
+
+	public JoinRedirectEvent(long identifier, String path) {
+		this(identifier, null, 0, path);
+	}
+
+	private JoinRedirectEvent(long identifier, String host, int port,
+			String path) {
+		this.identifier = identifier;
+		this.host = host;
+		this.port = port;
+		this.path = path;
+	}
+
+	public long getIdentifier() {
+		return identifier;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public boolean matches(Event event) {
+		return false;
+	}
+
+}
@@ -15,9 +15,25 @@ public class JoinRequestAckEvent extends Event {
 	/** True if the client's join request was accepted. */
 	private boolean accepted;
 
+	/** True if the link is compressed (see JoinRequestEvent). */
+	private boolean compression;
+
+	/**
+	 * The file holding the link's shared memory (null if the link is not
+	 * carried over shared memory).
+	 */
+	private String sharedMemoryPath;
+
 	public JoinRequestAckEvent(long identifier, boolean accepted) {
+		this(identifier, accepted, false, null);
+	}
+
+	public JoinRequestAckEvent(long identifier, boolean accepted,
+			boolean compression, String sharedMemoryPath) {
 		this.identifier = identifier;
 		this.accepted = accepted;
+		this.compression = compression;
+		this.sharedMemoryPath = sharedMemoryPath;
 	}
 	
 	public long getIdentifier() {
@@ -28,6 +44,14 @@ public class JoinRequestAckEvent extends Event {
 		return accepted;
 	}
 
+	public boolean getCompression() {
+		return compression;
+	}
+
+	public String getSharedMemoryPath() {
+		return sharedMemoryPath;
+	}
+
 	@Override
 	public boolean matches(Event event) {
 		// TODO Auto-generated method stub
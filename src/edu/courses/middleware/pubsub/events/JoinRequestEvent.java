@@ -15,12 +15,30 @@ public class JoinRequestEvent extends Event {
 	/** The requesting client's unique identifier. */
 	private long identifier;
 
-	/** The requesting client's listening port. */
+	/**
+	 * The port a requesting Broker serves join requests on (0 for other
+	 * clients).
+	 */
 	private int port;
 
+	/**
+	 * The Unix domain socket path a requesting Broker serves join requests on
+	 * (null if it serves them over TCP).
+	 */
+	private String path = null;
+
 	/** The type of client issuing the join request. */
 	private ClientType clientType;
 
+	/** True if the requesting client offers to compress the link. */
+	private boolean compression = false;
+
+	/**
+	 * True if the requesting client offers to carry the link over shared
+	 * memory (if it is on the same machine as the accepting Broker).
+	 */
+	private boolean sharedMemory = false;
+
 	public JoinRequestEvent(int port, ClientType clientType) {
 		this.port = port;
 		this.clientType = clientType;
@@ -38,10 +56,34 @@ public class JoinRequestEvent extends Event {
 		return port;
 	}
 
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
 	public ClientType getClientType() {
 		return clientType;
 	}
 
+	public boolean getCompression() {
+		return compression;
+	}
+
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	public boolean getSharedMemory() {
+		return sharedMemory;
+	}
+
+	public void setSharedMemory(boolean sharedMemory) {
+		this.sharedMemory = sharedMemory;
+	}
+
 	@Override
 	public boolean matches(Event event) {
 		if (this == event)
@@ -53,10 +95,16 @@ public class JoinRequestEvent extends Event {
 		JoinRequestEvent other = (JoinRequestEvent) event;
 		if (clientType != other.clientType)
 			return false;
+		if (compression != other.compression)
+			return false;
+		if (sharedMemory != other.sharedMemory)
+			return false;
 		if (identifier != other.identifier)
 			return false;
 		if (port != other.port)
 			return false;
+		if (path == null ? other.path != null : !path.equals(other.path))
+			return false;
 		return true;
 	}
 }
@@ -0,0 +1,49 @@
+package edu.courses.middleware.pubsub.events;
+
+/**
+ * The Event periodically issued by a Broker to its parent to report how busy
+ * its subtree is (see Settings.LOAD_REPORT_MILLIS), so that joining clients
+ * can be placed in lightly loaded parts of the Broker tree.
+ * 
+ */
+public class LoadEvent extends Event {
+	private static final long serialVersionUID = 6120348715203937461L;
+
+	/**
+	 * The number of Events handled per second by the Brokers of the issuing
+	 * Broker's subtree (including the issuing Broker).
+	 */
+	private float eventRate;
+
+	/** The number of Events queued on the subtree's connections. */
+	private int queueDepth;
+
+	/**
+	 * The number of participants (Brokers, Buyers, and Sellers) below the
+	 * issuing Broker.
+	 */
+	private int connections;
+
+	public LoadEvent(float eventRate, int queueDepth, int connections) {
+		this.eventRate = eventRate;
+		this.queueDepth = queueDepth;
+		this.connections = connections;
+	}
+
+	public float getEventRate() {
+		return eventRate;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	@Override
+	public boolean matches(Event event) {
+		return false;
+	}
+}
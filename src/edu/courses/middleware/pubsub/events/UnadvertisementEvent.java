@@ -0,0 +1,31 @@
+package edu.courses.middleware.pubsub.events;
+
+/**
+ * This Event is used to withdraw an advertisement along a path in the Broker
+ * tree.
+ * 
+ */
+public class UnadvertisementEvent extends Event {
+	private static final long serialVersionUID = -3305722618457213070L;
+
+	/** The advertisement being withdrawn. */
+	private AdvertisementEvent advertisement;
+
+	public UnadvertisementEvent(AdvertisementEvent advertisement) {
+		this.advertisement = advertisement;
+	}
+
+	public AdvertisementEvent getAdvertisement() {
+		return advertisement;
+	}
+
+	/**
+	 * Unadvertisements are never subscribed to, so they match no Event: they
+	 * are consumed by the BrokerClientHandler that receives them, which
+	 * withdraws the advertisement from its link (see ClientHandler.unadvertise).
+	 */
+	@Override
+	public boolean matches(Event event) {
+		return false;
+	}
+}
@@ -3,6 +3,7 @@ package edu.courses.middleware.pubsub.ui;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import edu.courses.middleware.pubsub.Threads;
 import edu.courses.middleware.pubsub.events.Event;
 
 /**
@@ -11,18 +12,23 @@ import edu.courses.middleware.pubsub.events.Event;
  * not in use.
  * 
  */
-public class UIAlertHandler extends Thread {
+public class UIAlertHandler implements Runnable {
 
 	private UIAlertHandlerDelegate delegate;
 	private Queue<Event> eventQueue;
 
 	public UIAlertHandler(UIAlertHandlerDelegate delegate) {
-		super();
-
 		this.delegate = delegate;
 		eventQueue = new ConcurrentLinkedQueue<Event>();
 	}
 
+	/**
+	 * Starts the alert loop on a thread of its own (see Threads).
+	 */
+	public void start() {
+		Threads.start(this);
+	}
+
 	/**
 	 * Queues an Event and notifies the thread (this thread) waiting on the
 	 * Event queue.
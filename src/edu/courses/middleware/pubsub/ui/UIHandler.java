@@ -6,6 +6,7 @@ import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
 
+import edu.courses.middleware.pubsub.Threads;
 import edu.courses.middleware.pubsub.events.Event;
 
 /**
@@ -17,7 +18,7 @@ import edu.courses.middleware.pubsub.events.Event;
  * specific system participant (Buyer, Seller).
  * 
  */
-public abstract class UIHandler extends Thread implements
+public abstract class UIHandler implements Runnable,
 		UIAlertHandlerDelegate {
 
 	/** The command line reader. */
@@ -40,8 +41,6 @@ public abstract class UIHandler extends Thread implements
 	private UIAlertHandler uiAlertHandler;
 
 	public UIHandler(UIHandlerDelegate delegate) {
-		super();
-
 		br = new BufferedReader(new InputStreamReader(System.in));
 		this.delegate = delegate;
 
@@ -55,6 +54,13 @@ public abstract class UIHandler extends Thread implements
 		uiAlertHandler.start();
 	}
 
+	/**
+	 * Starts the command line loop on a thread of its own (see Threads).
+	 */
+	public void start() {
+		Threads.start(this);
+	}
+
 	/**
 	 * Fills the commands map.
 	 */